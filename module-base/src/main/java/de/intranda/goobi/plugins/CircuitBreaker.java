@@ -0,0 +1,107 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+/**
+ * Circuit breaker for a single host. After a number of consecutive failures, the circuit is opened and all requests fail immediately. When the
+ * open time has elapsed, a single trial request is let through. If it succeeds, the circuit is closed again, otherwise it stays open for
+ * another period. A trial request that ends without a result, e.g. because it was interrupted, must be released with {@link #abortRequest()}.
+ */
+public class CircuitBreaker {
+
+    private int failureThreshold;
+    private long openNanos;
+
+    private int consecutiveFailures;
+    // System.nanoTime() when the circuit was opened, only valid if open is true
+    private long openedAt;
+    private boolean open;
+    private boolean trialRunning;
+    // thread sending the trial request, only valid if trialRunning is true
+    private Thread trialThread;
+
+    /**
+     * @param failureThreshold number of consecutive failures that open the circuit
+     * @param openSeconds time in seconds before a trial request is allowed
+     */
+    public CircuitBreaker(int failureThreshold, int openSeconds) {
+        setLimits(failureThreshold, openSeconds);
+    }
+
+    /**
+     * change the limits, the current state of the circuit is kept
+     *
+     * @param failureThreshold number of consecutive failures that open the circuit
+     * @param openSeconds time in seconds before a trial request is allowed
+     */
+    public synchronized void setLimits(int failureThreshold, int openSeconds) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openSeconds * 1_000_000_000l;
+    }
+
+    /**
+     * check if a request may be sent
+     *
+     * @return false if the circuit is open
+     */
+    public synchronized boolean allowRequest() {
+        if (!open) {
+            return true;
+        }
+        if (!trialRunning && System.nanoTime() - openedAt >= openNanos) {
+            trialRunning = true;
+            trialThread = Thread.currentThread();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * end a request of the current thread that neither succeeded nor failed. If it was the trial request, the next request is allowed as trial.
+     */
+    public synchronized void abortRequest() {
+        if (trialRunning && trialThread == Thread.currentThread()) {
+            trialRunning = false;
+            trialThread = null;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        open = false;
+        trialRunning = false;
+        trialThread = null;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (trialRunning || consecutiveFailures >= failureThreshold) {
+            open = true;
+            openedAt = System.nanoTime();
+            trialRunning = false;
+            trialThread = null;
+        }
+    }
+
+    public synchronized boolean isOpen() {
+        return open;
+    }
+}
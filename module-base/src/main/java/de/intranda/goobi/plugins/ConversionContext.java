@@ -0,0 +1,110 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+import de.intranda.goobi.plugins.MigrateVisualLibraryToGoobiStepPlugin.ImageName;
+import lombok.Getter;
+import lombok.Setter;
+import ugh.dl.DocStruct;
+
+/**
+ * State of the migration of a single record. A new context is created for each record and discarded after its media files were downloaded,
+ * so nothing of a previous record is kept in a reused plugin instance.
+ */
+@Getter
+public class ConversionContext {
+
+    // the record of the process
+    @Setter
+    private MetsRecord metsRecord;
+    @Setter
+    private List<ImageName> imageFiles = new ArrayList<>();
+    // file ID -> image, built together with imageFiles
+    @Setter
+    private Map<String, ImageName> imageFileIndex = new HashMap<>();
+    // ALTO file ID -> name of the image of the same page without extension
+    @Setter
+    private Map<String, String> fulltextNames = new HashMap<>();
+
+    // METS IDs -> created docstructs, only used while the structure is created
+    private final Map<String, DocStruct> pageMap = new HashMap<>();
+    private final Map<String, DocStruct> docstructMap = new HashMap<>();
+    // DMDID -> MODS section converted in parallel before the structure is created
+    private final Map<String, ModsMapping.Values> modsValues = new ConcurrentHashMap<>();
+
+    // identifier -> record of the previous migration, null if the process was not migrated before
+    private final Map<String, MetsRecord> previousRecords = new HashMap<>();
+    // METS files of the last successful migration, null if no record was downloaded
+    @Setter
+    private RecordBaseline recordBaseline;
+    // differences to the previous migration, null if the incremental mode is not used
+    @Setter
+    private MetsRecordDiff recordDiff;
+
+    // checksums of the downloaded media files, null if the media files were not downloaded
+    @Setter
+    private IntegrityReport integrityReport;
+    // downloads started during the conversion, null if the downloads run after the conversion
+    @Setter
+    private Future<Boolean> imageDownload;
+    @Setter
+    private Future<?> fulltextDownload;
+
+    // durations of the phases in nanoseconds
+    private long metsFetchNanos;
+    @Setter
+    private long conversionNanos;
+    @Setter
+    private long downloadNanos;
+
+    public void addMetsFetchTime(long nanos) {
+        metsFetchNanos += nanos;
+    }
+
+    /**
+     * check if a file is contained unchanged in the record of the previous migration
+     *
+     * @param fileId the file ID
+     * @return true, if the incremental mode is used and the file was not changed
+     */
+    public boolean isFileUnchanged(String fileId) {
+        return recordDiff != null && recordDiff.isFileUnchanged(fileId);
+    }
+
+    /**
+     * release everything that is only needed for the conversion, the downloads need only the files of the record
+     */
+    public void releaseMetadata() {
+        pageMap.clear();
+        docstructMap.clear();
+        modsValues.clear();
+        previousRecords.clear();
+        if (metsRecord != null) {
+            metsRecord.releaseMetadata();
+        }
+    }
+}
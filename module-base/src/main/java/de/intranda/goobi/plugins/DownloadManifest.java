@@ -0,0 +1,156 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Records the state of all downloads of a process, so that a repeated run can skip completed files and resume partially written ones.
+ *
+ * The manifest is an append-only text file with one tab separated line per state change. When the manifest is loaded, the last line of each
+ * file wins. On close, the file is rewritten with the current state only.
+ */
+@Log4j2
+public class DownloadManifest implements AutoCloseable {
+
+    public enum State {
+        PARTIAL,
+        COMPLETE,
+        FAILED
+    }
+
+    private final Path manifestFile;
+    // target file -> last known state
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private BufferedWriter writer;
+
+    private DownloadManifest(Path manifestFile) {
+        this.manifestFile = manifestFile;
+    }
+
+    /**
+     * load an existing manifest or create a new one
+     *
+     * @param manifestFile the manifest file
+     * @return the manifest
+     * @throws IOException
+     */
+    public static DownloadManifest load(Path manifestFile) throws IOException {
+        DownloadManifest manifest = new DownloadManifest(manifestFile);
+        if (Files.isRegularFile(manifestFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Entry entry = Entry.parse(line);
+                    if (entry != null) {
+                        manifest.entries.put(entry.getFile(), entry);
+                    }
+                }
+            }
+        } else {
+            Files.createDirectories(manifestFile.getParent());
+        }
+        manifest.writer = Files.newBufferedWriter(manifestFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return manifest;
+    }
+
+    /**
+     * get the last known state of a file
+     *
+     * @param target the downloaded file
+     * @return the entry or null, if the file was never downloaded
+     */
+    public synchronized Entry get(Path target) {
+        return entries.get(target.toString());
+    }
+
+    /**
+     * store a new state of a file
+     *
+     * @param entry the new state
+     * @throws IOException
+     */
+    public synchronized void update(Entry entry) throws IOException {
+        entries.put(entry.getFile(), entry);
+        writer.write(entry.format());
+        writer.newLine();
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+        // compact the file
+        Path tempFile = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            for (Entry entry : entries.values()) {
+                out.write(entry.format());
+                out.newLine();
+            }
+        }
+        Files.move(tempFile, manifestFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Entry {
+        private String url;
+        private String file;
+        private long size;
+        private String etag;
+        private String lastModified;
+        private String checksum;
+        private State state;
+
+        private String format() {
+            return String.join("\t", state.name(), file, String.valueOf(size), StringUtils.defaultString(etag),
+                    StringUtils.defaultString(lastModified), StringUtils.defaultString(checksum), url);
+        }
+
+        private static Entry parse(String line) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 7) {
+                return null;
+            }
+            try {
+                return new Entry(fields[6], fields[1], Long.parseLong(fields[2]), StringUtils.trimToNull(fields[3]),
+                        StringUtils.trimToNull(fields[4]), StringUtils.trimToNull(fields[5]), State.valueOf(fields[0]));
+            } catch (IllegalArgumentException e) {
+                log.warn("Ignore invalid manifest line {}", line);
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the media downloads of a record while the record is still converted.
+ *
+ * If the pipeline is closed before {@link #complete()} was called, the conversion or one of the downloads failed. The running downloads are
+ * interrupted then, so the failure is not delayed until all files are transferred. Completed files are kept in the download manifest.
+ */
+public class DownloadPipeline implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private volatile boolean completed;
+
+    /**
+     * @param threads number of downloads that can run at the same time
+     */
+    public DownloadPipeline(int threads) {
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * start a download
+     *
+     * @param download the download
+     * @return the result of the download
+     */
+    public <T> Future<T> submit(Callable<T> download) {
+        return executor.submit(download);
+    }
+
+    /**
+     * start a download without result
+     *
+     * @param download the download
+     * @return the state of the download
+     */
+    public Future<?> submit(Runnable download) {
+        return executor.submit(download);
+    }
+
+    /**
+     * wait for the image and fulltext downloads of a record. If an image could not be downloaded, the record failed and the fulltext download
+     * is not awaited, it is interrupted when the pipeline is closed.
+     *
+     * @param imageDownload the image download, false if an image could not be downloaded
+     * @param fulltextDownload the fulltext download
+     * @return false if an image could not be downloaded
+     * @throws InterruptedException
+     * @throws ExecutionException if a download failed with an exception
+     */
+    public boolean await(Future<Boolean> imageDownload, Future<?> fulltextDownload) throws InterruptedException, ExecutionException {
+        if (!imageDownload.get()) {
+            return false;
+        }
+        fulltextDownload.get();
+        complete();
+        return true;
+    }
+
+    /**
+     * mark the downloads as finished, closing the pipeline does not interrupt them anymore
+     */
+    public void complete() {
+        completed = true;
+    }
+
+    /**
+     * wait until all downloads are finished, downloads of a pipeline that was not completed are interrupted
+     */
+    @Override
+    public void close() {
+        if (!completed) {
+            executor.shutdownNow();
+        }
+        executor.close();
+    }
+}
@@ -0,0 +1,129 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.goobi.beans.Process;
+import org.goobi.goobiScript.AbstractIGoobiScript;
+import org.goobi.goobiScript.GoobiScriptResult;
+import org.goobi.goobiScript.IGoobiScript;
+import org.goobi.production.enums.GoobiScriptResultType;
+
+import de.sub.goobi.helper.Helper;
+import de.sub.goobi.persistence.managers.ProcessManager;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * GoobiScript to migrate the selected processes with a {@link MigrationBatch}. Each call of {@link #execute(GoobiScriptResult)} only starts the
+ * migration of a process, so the next records are converted while the media files of the previous ones are downloaded. The result of a
+ * process is updated when its migration is finished.
+ */
+@Log4j2
+public class GoobiScriptMigrateVisualLibrary extends AbstractIGoobiScript implements IGoobiScript {
+
+    private static final String CONVERSION_THREADS = "conversionThreads";
+    private static final String DOWNLOAD_THREADS = "downloadThreads";
+
+    private MigrationBatch batch;
+    // number of processes not started yet, the batch is closed after the last one
+    private int remaining;
+
+    @Override
+    public String getAction() {
+        return "migrateVisualLibrary";
+    }
+
+    @Override
+    public String getSampleCall() {
+        StringBuilder sb = new StringBuilder();
+        addNewActionToSampleCall(sb, "Migrate the selected processes from the Visual Library using the step of the migration plugin.");
+        addParameterToSampleCall(sb, CONVERSION_THREADS, "2", "Number of records converted in parallel.");
+        addParameterToSampleCall(sb, DOWNLOAD_THREADS, "4", "Number of records whose media files are downloaded in parallel.");
+        return sb.toString();
+    }
+
+    @Override
+    public List<GoobiScriptResult> prepare(List<Integer> processes, String command, Map<String, String> parameters) {
+        super.prepare(processes, command, parameters);
+        int conversionThreads = getThreads(parameters, CONVERSION_THREADS, 2);
+        int downloadThreads = getThreads(parameters, DOWNLOAD_THREADS, 4);
+        if (conversionThreads < 1 || downloadThreads < 1) {
+            Helper.setFehlerMeldungUntranslated("Invalid number of threads: ", conversionThreads + ", " + downloadThreads);
+            return new ArrayList<>();
+        }
+        batch = new MigrationBatch(MigrateVisualLibraryToGoobiStepPlugin::new, conversionThreads, downloadThreads);
+        remaining = processes.size();
+
+        List<GoobiScriptResult> newList = new ArrayList<>();
+        for (Integer processId : processes) {
+            newList.add(new GoobiScriptResult(processId, command, parameters, username, starttime));
+        }
+        return newList;
+    }
+
+    /**
+     * @return the configured number of threads, the default if the parameter is missing or 0 if it is not a number
+     */
+    private static int getThreads(Map<String, String> parameters, String name, int defaultValue) {
+        String value = parameters.get(name);
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+        return StringUtils.isNumeric(value.trim()) ? Integer.parseInt(value.trim()) : 0;
+    }
+
+    @Override
+    public void execute(GoobiScriptResult gsr) {
+        Process process = ProcessManager.getProcessById(gsr.getProcessId());
+        if (process != null) {
+            gsr.setProcessTitle(process.getTitel());
+        }
+        gsr.setResultType(GoobiScriptResultType.RUNNING);
+        gsr.updateTimestamp();
+        try {
+            batch.submit(gsr.getProcessId()).whenComplete((success, e) -> {
+                if (Boolean.TRUE.equals(success)) {
+                    gsr.setResultMessage("Process migrated successfully.");
+                    gsr.setResultType(GoobiScriptResultType.OK);
+                } else {
+                    gsr.setResultMessage("Migration failed, see the journal of the process.");
+                    gsr.setResultType(GoobiScriptResultType.ERROR);
+                }
+                gsr.updateTimestamp();
+            });
+            remaining--;
+            if (remaining == 0) {
+                // the last process was started, wait for the running migrations
+                batch.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error(e);
+            gsr.setResultMessage("Migration was interrupted.");
+            gsr.setResultType(GoobiScriptResultType.ERROR);
+            gsr.updateTimestamp();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the requests against a single host. A token bucket limits the number of requests per second, short bursts up to the size of the
+ * bucket are allowed. Independently, the number of requests running at the same time can be limited.
+ *
+ * The limits can be changed while requests are running. Running requests are not affected, a lower limit applies as soon as enough of
+ * them are finished. Waiting requests are served in the order of their arrival. They are parked without holding a monitor, so many virtual
+ * threads can wait at the same time without blocking their carrier threads.
+ */
+public class HostRateLimiter {
+
+    // used as limit if the number of parallel requests is not limited
+    private static final int UNLIMITED = Integer.MAX_VALUE;
+
+    // one permit for each request that may be started, fair to keep the order of the waiting requests
+    private final AdjustableSemaphore concurrent = new AdjustableSemaphore();
+    // current number of permits of the semaphore if no request is running
+    private int maxConcurrent = UNLIMITED;
+    // tokens per nanosecond, 0 or less if the rate is not limited
+    private double tokensPerNano;
+    private double burst;
+
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param requestsPerSecond sustained number of requests per second, 0 or less for no limit
+     * @param burst number of requests that can be sent at once after an idle time
+     * @param maxConcurrent maximum number of parallel requests, 0 or less for no limit
+     */
+    public HostRateLimiter(double requestsPerSecond, int burst, int maxConcurrent) {
+        this.lastRefill = System.nanoTime();
+        setLimits(requestsPerSecond, burst, maxConcurrent);
+        this.tokens = this.burst;
+    }
+
+    /**
+     * change the limits
+     *
+     * @param requestsPerSecond sustained number of requests per second, 0 or less for no limit
+     * @param burst number of requests that can be sent at once after an idle time
+     * @param maxConcurrent maximum number of parallel requests, 0 or less for no limit
+     */
+    public synchronized void setLimits(double requestsPerSecond, int burst, int maxConcurrent) {
+        // tokens collected so far are counted with the old rate
+        refill();
+        this.tokensPerNano = requestsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(1, burst);
+        this.tokens = Math.min(this.burst, tokens);
+        int newMaxConcurrent = maxConcurrent > 0 ? maxConcurrent : UNLIMITED;
+        if (newMaxConcurrent > this.maxConcurrent) {
+            // waiting requests may be allowed by a higher limit
+            concurrent.release(newMaxConcurrent - this.maxConcurrent);
+        } else if (newMaxConcurrent < this.maxConcurrent) {
+            // running requests keep their permits, the count may become negative until enough of them are finished
+            concurrent.reducePermits(this.maxConcurrent - newMaxConcurrent);
+        }
+        this.maxConcurrent = newMaxConcurrent;
+    }
+
+    /**
+     * wait until a request may be sent. Every call must be followed by a call of {@link #release()} when the request is finished.
+     *
+     * @throws InterruptedException
+     */
+    public void acquire() throws InterruptedException {
+        concurrent.acquire();
+        try {
+            long waitNanos = reserveToken();
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        } catch (InterruptedException e) {
+            release();
+            throw e;
+        }
+    }
+
+    /**
+     * finish a request started with {@link #acquire()}
+     */
+    public void release() {
+        concurrent.release();
+    }
+
+    /**
+     * take a token from the bucket. If the bucket is empty, the token is borrowed from the future and the caller has to wait until it is
+     * available, so waiting requests are served in the order of their arrival.
+     *
+     * @return nanoseconds to wait before the request may be sent
+     */
+    synchronized long reserveToken() {
+        if (tokensPerNano <= 0) {
+            return 0;
+        }
+        refill();
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (tokensPerNano > 0) {
+            tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+        }
+        lastRefill = now;
+    }
+
+    /**
+     * fair semaphore whose number of permits can be reduced
+     */
+    private static class AdjustableSemaphore extends Semaphore {
+
+        private static final long serialVersionUID = 1L;
+
+        AdjustableSemaphore() {
+            super(UNLIMITED, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
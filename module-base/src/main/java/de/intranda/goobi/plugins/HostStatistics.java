@@ -0,0 +1,54 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+import java.beans.ConstructorProperties;
+
+import lombok.Getter;
+
+/**
+ * Request statistics of a single host, as shown in JMX clients. Latencies are measured until the response headers are received.
+ */
+@Getter
+public class HostStatistics {
+
+    private final long requests;
+    // requests that failed or were answered with a server error
+    private final long failures;
+    private final long meanMillis;
+    // upper bound of the latency bucket containing the percentile
+    private final long p50Millis;
+    private final long p95Millis;
+    private final long maxMillis;
+    // number of requests per latency bucket, see MigrationMetricsMXBean#getLatencyBucketsMillis()
+    private final long[] bucketCounts;
+
+    @ConstructorProperties({ "requests", "failures", "meanMillis", "p50Millis", "p95Millis", "maxMillis", "bucketCounts" })
+    public HostStatistics(long requests, long failures, long meanMillis, long p50Millis, long p95Millis, long maxMillis, long[] bucketCounts) {
+        this.requests = requests;
+        this.failures = failures;
+        this.meanMillis = meanMillis;
+        this.p50Millis = p50Millis;
+        this.p95Millis = p95Millis;
+        this.maxMillis = maxMillis;
+        this.bucketCounts = bucketCounts;
+    }
+}
@@ -0,0 +1,584 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.lang3.StringUtils;
+
+import de.intranda.goobi.plugins.DownloadManifest.Entry;
+import de.intranda.goobi.plugins.DownloadManifest.State;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * File transfers with support for conditional requests and the resumption of partially written files.
+ *
+ * All requests of the plugins share one client. The client keeps connections alive and reuses them for further requests to the same host,
+ * HTTP/2 is used if the server supports it. The number of parallel requests and the request rate per host are limited for the whole
+ * application.
+ */
+@Log4j2
+public class HttpTransfer {
+
+    // maximum number of bytes copied in one step
+    private static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private static volatile Settings settings = new Settings(HttpClient.Version.HTTP_2, 30, 300, 2, 0, 1, null, 0, 5, 60);
+    private static volatile HttpClient client = createClient(settings);
+
+    // host -> limits for the requests against it
+    private static final Map<String, HostRateLimiter> RATE_LIMITERS = new ConcurrentHashMap<>();
+    // host -> circuit breaker
+    private static final Map<String, CircuitBreaker> CIRCUIT_BREAKERS = new ConcurrentHashMap<>();
+
+    private HttpTransfer() {
+    }
+
+    /**
+     * change the settings of the shared client. The client is only replaced if the connection settings differ from the current ones, running
+     * transfers are not affected. The limits of the hosts are changed in place, so requests that are already running still count against them.
+     *
+     * @param newSettings the new settings
+     */
+    public static synchronized void configure(Settings newSettings) {
+        if (newSettings.equals(settings)) {
+            return;
+        }
+        Settings oldSettings = settings;
+        settings = newSettings;
+        for (HostRateLimiter limiter : RATE_LIMITERS.values()) {
+            limiter.setLimits(newSettings.getRequestsPerSecond(), newSettings.getBurst(), newSettings.getConnectionsPerHost());
+        }
+        for (CircuitBreaker circuitBreaker : CIRCUIT_BREAKERS.values()) {
+            circuitBreaker.setLimits(newSettings.getFailureThreshold(), newSettings.getOpenSeconds());
+        }
+        if (newSettings.getVersion() != oldSettings.getVersion() || newSettings.getConnectTimeout() != oldSettings.getConnectTimeout()
+                || !StringUtils.equals(newSettings.getProxyHost(), oldSettings.getProxyHost()) || newSettings.getProxyPort() != oldSettings.getProxyPort()) {
+            client = createClient(newSettings);
+        }
+    }
+
+    private static HttpClient createClient(Settings clientSettings) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(clientSettings.getVersion())
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(clientSettings.getConnectTimeout()));
+        if (StringUtils.isNotBlank(clientSettings.getProxyHost())) {
+            builder.proxy(ProxySelector.of(new InetSocketAddress(clientSettings.getProxyHost(), clientSettings.getProxyPort())));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Download a file. If the manifest contains a completed download of the same url with the same size, the file is only revalidated with a
+     * conditional request. A partially written file is resumed with a range request, if the server sent a validator for it.
+     *
+     * If the server answers with an error, an empty file is written, so the caller can handle it like an empty response. Temporary errors (429,
+     * 502, 503, 504) are thrown as {@link RetryableStatusException} instead and leave the file untouched.
+     *
+     * The content is written into a temporary file next to the target and renamed when the complete content was received, so the target never
+     * contains partial data.
+     *
+     * @param url the url to download
+     * @param target the target file
+     * @param manifest the manifest of the process, can be null
+     * @return the state of the file
+     * @throws IOException if the connection failed or the content is incomplete
+     * @throws InterruptedException
+     */
+    public static Entry download(String url, Path target, DownloadManifest manifest) throws IOException, InterruptedException {
+        return download(url, target, manifest, null, null);
+    }
+
+    /**
+     * Download a file and verify its checksum. The checksum is computed while the content is written, the file is not read again. If the
+     * checksum does not match, the file is discarded and a {@link ChecksumMismatchException} is thrown. Files that were completed in a previous
+     * run were verified at that time and are not checked again.
+     *
+     * @param url the url to download
+     * @param target the target file
+     * @param manifest the manifest of the process, can be null
+     * @param checksumType algorithm of the expected checksum like MD5 or SHA-256, can be null
+     * @param expectedChecksum the expected checksum as hex string, can be null
+     * @return the state of the file, the checksum of the entry is always a SHA-256 checksum
+     * @throws IOException if the connection failed, the content is incomplete or the checksum does not match
+     * @throws InterruptedException
+     */
+    public static Entry download(String url, Path target, DownloadManifest manifest, String checksumType, String expectedChecksum)
+            throws IOException, InterruptedException {
+        return download(url, target, manifest, checksumType, expectedChecksum, false);
+    }
+
+    /**
+     * Download a file and verify its checksum, optionally the file is stored gzip compressed. The checksums are computed from the uncompressed
+     * content. Compressed files cannot be resumed, an interrupted download starts again.
+     *
+     * @param url the url to download
+     * @param target the target file
+     * @param manifest the manifest of the process, can be null
+     * @param checksumType algorithm of the expected checksum like MD5 or SHA-256, can be null
+     * @param expectedChecksum the expected checksum as hex string, can be null
+     * @param compress store the file gzip compressed
+     * @return the state of the file, the checksum of the entry is always a SHA-256 checksum. If the file was kept without transferring it
+     *         again, the entry of the manifest itself is returned.
+     * @throws IOException if the connection failed, the content is incomplete or the checksum does not match
+     * @throws InterruptedException
+     */
+    public static Entry download(String url, Path target, DownloadManifest manifest, String checksumType, String expectedChecksum, boolean compress)
+            throws IOException, InterruptedException {
+        Entry entry = manifest == null ? null : manifest.get(target);
+        if (entry != null && !url.equals(entry.getUrl())) {
+            // the file was downloaded from a different location before
+            entry = null;
+        }
+        long existingSize = Files.isRegularFile(target) ? Files.size(target) : -1;
+        Path partFile = getPartFile(target);
+        long partSize = Files.isRegularFile(partFile) ? Files.size(partFile) : -1;
+
+        HttpRequest.Builder request = newRequest(url);
+        boolean resume = false;
+        if (entry != null && entry.getState() == State.COMPLETE && existingSize == entry.getSize()) {
+            if (entry.getEtag() == null && entry.getLastModified() == null) {
+                // nothing to revalidate, keep the file
+                return entry;
+            }
+            if (entry.getEtag() != null) {
+                request.header("If-None-Match", entry.getEtag());
+            }
+            if (entry.getLastModified() != null) {
+                request.header("If-Modified-Since", entry.getLastModified());
+            }
+        } else if (!compress && entry != null && entry.getState() == State.PARTIAL && partSize > 0) {
+            String validator = getRangeValidator(entry);
+            if (validator != null) {
+                request.header("Range", "bytes=" + partSize + "-");
+                request.header("If-Range", validator);
+                resume = true;
+            }
+        }
+
+        boolean rangeRequest = resume;
+        Entry previous = entry;
+        String verificationType = isSupportedChecksumType(checksumType) && StringUtils.isNotBlank(expectedChecksum) ? checksumType : null;
+        return execute(request.build(), response -> {
+            Entry written = write(response, url, target, manifest, rangeRequest, partSize, verificationType, expectedChecksum, compress);
+            // not modified
+            return written == null ? previous : written;
+        });
+    }
+
+    /**
+     * check if a checksum type of a METS file can be verified
+     *
+     * @param checksumType the value of the CHECKSUMTYPE attribute
+     * @return true, if the java runtime supports the algorithm
+     */
+    public static boolean isSupportedChecksumType(String checksumType) {
+        if (StringUtils.isBlank(checksumType)) {
+            return false;
+        }
+        try {
+            MessageDigest.getInstance(checksumType);
+            return true;
+        } catch (NoSuchAlgorithmException e) {
+            return false;
+        }
+    }
+
+    /**
+     * get the temporary file a download is written into. It is located in the same folder as the target, so it can be renamed atomically. The
+     * name starts with a dot, so the file is hidden from folder listings.
+     *
+     * @param target the target file
+     * @return the temporary file
+     */
+    public static Path getPartFile(Path target) {
+        return target.resolveSibling("." + target.getFileName() + ".part");
+    }
+
+    /**
+     * write the response into the temporary file and move it to the target, when the complete content was received. Data that was already
+     * written is kept, the download can be resumed with a range request.
+     *
+     * @return the new state of the file or null, if the file was not modified
+     */
+    private static Entry write(HttpResponse<InputStream> response, String url, Path target, DownloadManifest manifest, boolean resume,
+            long existingSize, String checksumType, String expectedChecksum, boolean compress) throws IOException {
+        Path partFile = getPartFile(target);
+        try (InputStream body = response.body()) {
+            int status = response.statusCode();
+            if (status == 304) {
+                log.debug("{} was not modified", url);
+                return null;
+            }
+            checkRetryableStatus(response, url);
+            if (status >= 400) {
+                log.error("Download of {} failed with status {}", url, status);
+                Files.deleteIfExists(partFile);
+                Files.write(target, new byte[0]);
+                return update(manifest, new Entry(url, target.toString(), 0, null, null, null, State.FAILED));
+            }
+
+            boolean append = resume && status == 206;
+            if (append && !response.headers().firstValue("Content-Range").orElse("").startsWith("bytes " + existingSize + "-")) {
+                // unexpected range, start again with the complete file on the next attempt
+                Files.deleteIfExists(partFile);
+                update(manifest, new Entry(url, target.toString(), 0, null, null, null, State.FAILED));
+                throw new IOException("Unexpected content range for " + url);
+            }
+
+            String etag = response.headers().firstValue("ETag").orElse(null);
+            String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+            update(manifest, new Entry(url, target.toString(), 0, etag, lastModified, null, State.PARTIAL));
+
+            MessageDigest digest = createDigest("SHA-256");
+            MessageDigest verificationDigest = checksumType == null ? null : createDigest(checksumType);
+            long offset = 0;
+            if (append) {
+                // include the existing part in the checksums
+                try (InputStream existing = digestStream(Files.newInputStream(partFile), digest, verificationDigest)) {
+                    existing.transferTo(OutputStream.nullOutputStream());
+                }
+                offset = existingSize;
+            }
+            long received;
+            if (compress) {
+                try (InputStream in = digestStream(body, digest, verificationDigest);
+                        OutputStream out = new GZIPOutputStream(Files.newOutputStream(partFile), GZIP_BUFFER_SIZE)) {
+                    received = in.transferTo(out);
+                }
+            } else {
+                try (FileChannel out = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+                        ReadableByteChannel in = Channels.newChannel(digestStream(body, digest, verificationDigest))) {
+                    received = transfer(in, out, offset);
+                }
+            }
+
+            MigrationMetrics.getInstance().addBytes(received);
+
+            long expectedLength = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+            if (expectedLength >= 0 && received != expectedLength) {
+                // keep the received part, the next attempt resumes it
+                throw new IOException("Download of " + url + " is incomplete, received " + received + " of " + expectedLength + " bytes");
+            }
+
+            if (verificationDigest != null) {
+                String actualChecksum = HexFormat.of().formatHex(verificationDigest.digest());
+                if (!actualChecksum.equalsIgnoreCase(expectedChecksum.trim())) {
+                    // the content is complete but wrong, start again with the complete file on the next attempt
+                    Files.deleteIfExists(partFile);
+                    update(manifest, new Entry(url, target.toString(), 0, null, null, null, State.FAILED));
+                    throw new ChecksumMismatchException(
+                            "Checksum of " + url + " does not match, expected " + checksumType + " " + expectedChecksum + " but was " + actualChecksum);
+                }
+            }
+
+            long size = Files.size(partFile);
+            move(partFile, target);
+            return update(manifest,
+                    new Entry(url, target.toString(), size, etag, lastModified, HexFormat.of().formatHex(digest.digest()), State.COMPLETE));
+        }
+    }
+
+    /**
+     * send a GET request and handle the response. The connection counts against the limit of its host until the handler returns.
+     *
+     * @param url the url to request
+     * @param headers additional request headers
+     * @param handler handles the response, must close the body
+     * @return the result of the handler
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public static <T> T get(String url, Map<String, String> headers, ResponseHandler<T> handler) throws IOException, InterruptedException {
+        HttpRequest.Builder request = newRequest(url);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            request.header(header.getKey(), header.getValue());
+        }
+        return execute(request.build(), handler);
+    }
+
+    private static HttpRequest.Builder newRequest(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(settings.getReadTimeout())).GET();
+    }
+
+    private static <T> T execute(HttpRequest request, ResponseHandler<T> handler) throws IOException, InterruptedException {
+        CircuitBreaker circuitBreaker = getCircuitBreaker(request.uri());
+        if (circuitBreaker != null && !circuitBreaker.allowRequest()) {
+            throw new HostUnavailableException("Host " + request.uri().getHost() + " is unavailable, request to " + request.uri() + " skipped");
+        }
+        // false until the result of the request was reported to the circuit breaker
+        boolean reported = false;
+        try {
+            HostRateLimiter rateLimiter = getRateLimiter(request.uri());
+            if (rateLimiter != null) {
+                rateLimiter.acquire();
+            }
+            try {
+                HttpResponse<InputStream> response;
+                long start = System.nanoTime();
+                try {
+                    response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                } catch (IOException e) {
+                    MigrationMetrics.getInstance().request(request.uri().getHost(), System.nanoTime() - start, true);
+                    if (circuitBreaker != null) {
+                        circuitBreaker.recordFailure();
+                    }
+                    reported = true;
+                    throw e;
+                }
+                boolean serverError = response.statusCode() >= 500 || response.statusCode() == 429;
+                MigrationMetrics.getInstance().request(request.uri().getHost(), System.nanoTime() - start, serverError);
+                if (circuitBreaker != null) {
+                    if (serverError) {
+                        circuitBreaker.recordFailure();
+                    } else {
+                        circuitBreaker.recordSuccess();
+                    }
+                }
+                reported = true;
+                return handler.handle(response);
+            } finally {
+                if (rateLimiter != null) {
+                    rateLimiter.release();
+                }
+            }
+        } finally {
+            if (circuitBreaker != null && !reported) {
+                // interrupted or failed without a response, don't keep the circuit open because of a trial request without result
+                circuitBreaker.abortRequest();
+            }
+        }
+    }
+
+    private static HostRateLimiter getRateLimiter(URI uri) {
+        Settings current = settings;
+        if ((current.getConnectionsPerHost() <= 0 && current.getRequestsPerSecond() <= 0) || uri.getHost() == null) {
+            return null;
+        }
+        return RATE_LIMITERS.computeIfAbsent(uri.getHost(),
+                h -> new HostRateLimiter(current.getRequestsPerSecond(), current.getBurst(), current.getConnectionsPerHost()));
+    }
+
+    private static CircuitBreaker getCircuitBreaker(URI uri) {
+        Settings current = settings;
+        if (current.getFailureThreshold() <= 0 || uri.getHost() == null) {
+            return null;
+        }
+        return CIRCUIT_BREAKERS.computeIfAbsent(uri.getHost(), h -> new CircuitBreaker(current.getFailureThreshold(), current.getOpenSeconds()));
+    }
+
+    /**
+     * throw a {@link RetryableStatusException} if the server reported a temporary error, the body of the response is closed by the caller
+     *
+     * @param response the response
+     * @param url the requested url
+     * @throws RetryableStatusException
+     */
+    static void checkRetryableStatus(HttpResponse<?> response, String url) throws RetryableStatusException {
+        int status = response.statusCode();
+        if (status == 429 || status == 502 || status == 503 || status == 504) {
+            Duration retryAfter = parseRetryAfter(response.headers().firstValue("Retry-After").orElse(null));
+            throw new RetryableStatusException("Download of " + url + " failed with status " + status, retryAfter);
+        }
+    }
+
+    /**
+     * parse the value of a Retry-After header, either a number of seconds or a HTTP date
+     *
+     * @param value the header value
+     * @return the time to wait or null, if the value is missing or invalid
+     */
+    static Duration parseRetryAfter(String value) {
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            // not a number, try a date
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+            Duration wait = Duration.between(ZonedDateTime.now(date.getZone()), date);
+            return wait.isNegative() ? Duration.ZERO : wait;
+        } catch (DateTimeParseException e) {
+            log.debug("Ignore invalid Retry-After header {}", value);
+            return null;
+        }
+    }
+
+    /**
+     * copy a channel into a file, starting at the given position
+     *
+     * @return the number of copied bytes
+     */
+    private static long transfer(ReadableByteChannel in, FileChannel out, long position) throws IOException {
+        long received = 0;
+        long count;
+        // transferFrom returns 0 at the end of the stream
+        while ((count = out.transferFrom(in, position + received, TRANSFER_CHUNK_SIZE)) > 0) {
+            received += count;
+        }
+        return received;
+    }
+
+    /**
+     * rename a completed file, so other processes never see partially written files
+     */
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String getRangeValidator(Entry entry) {
+        // weak entity tags cannot be used for range requests
+        if (StringUtils.isNotBlank(entry.getEtag()) && !entry.getEtag().startsWith("W/")) {
+            return entry.getEtag();
+        }
+        return entry.getLastModified();
+    }
+
+    private static Entry update(DownloadManifest manifest, Entry entry) throws IOException {
+        if (manifest != null) {
+            manifest.update(entry);
+        }
+        return entry;
+    }
+
+    private static InputStream digestStream(InputStream in, MessageDigest digest, MessageDigest verificationDigest) {
+        InputStream stream = new DigestInputStream(in, digest);
+        return verificationDigest == null ? stream : new DigestInputStream(stream, verificationDigest);
+    }
+
+    private static MessageDigest createDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is available in every java runtime, other algorithms are checked before
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface ResponseHandler<T> {
+        T handle(HttpResponse<InputStream> response) throws IOException;
+    }
+
+    /**
+     * settings of the shared client
+     */
+    @Getter
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class Settings {
+        private HttpClient.Version version;
+        // seconds
+        private int connectTimeout;
+        // seconds until the response headers must be received
+        private int readTimeout;
+        // maximum number of parallel requests against the same host, 0 or less for no limit
+        private int connectionsPerHost;
+        // sustained number of requests per second against the same host, 0 or less for no limit
+        private double requestsPerSecond;
+        // number of requests that can be sent at once after an idle time
+        private int burst;
+        // proxy, null if no proxy is used
+        private String proxyHost;
+        private int proxyPort;
+        // consecutive failures that mark a host as unavailable, 0 or less to disable the circuit breaker
+        private int failureThreshold;
+        // seconds until an unavailable host is tried again
+        private int openSeconds;
+    }
+
+    /**
+     * the server reported a temporary error, the request can be repeated
+     */
+    @Getter
+    public static class RetryableStatusException extends IOException {
+        private static final long serialVersionUID = -2594166372411405876L;
+
+        // time requested by the server, null if not specified
+        private final transient Duration retryAfter;
+
+        public RetryableStatusException(String message, Duration retryAfter) {
+            super(message);
+            this.retryAfter = retryAfter;
+        }
+    }
+
+    /**
+     * the downloaded content does not match the checksum of the METS file
+     */
+    public static class ChecksumMismatchException extends IOException {
+        private static final long serialVersionUID = 3129875366290123894L;
+
+        public ChecksumMismatchException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * the circuit breaker of the host is open, the request was not sent
+     */
+    public static class HostUnavailableException extends IOException {
+        private static final long serialVersionUID = 8011815718331417420L;
+
+        public HostUnavailableException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Collects the result of all media downloads of a process. The report is written as a tab separated text file with one line per file, it
+ * contains the SHA-256 checksum of the file and the result of the comparison with the checksum of the METS file.
+ */
+public class IntegrityReport {
+
+    public enum Status {
+        // the checksum matches the checksum of the METS file
+        VERIFIED,
+        // the METS file contains no checksum or an unsupported checksum type, or the file was kept without comparing its checksum
+        NOT_VERIFIED,
+        // the checksum differs from the checksum of the METS file
+        MISMATCH,
+        // the file could not be downloaded
+        FAILED
+    }
+
+    private final List<Line> lines = new ArrayList<>();
+
+    /**
+     * add the result of a file
+     *
+     * @param line the result
+     */
+    public synchronized void add(Line line) {
+        lines.add(line);
+    }
+
+    /**
+     * count the files with the given status
+     *
+     * @return status -> number of files, only states that occurred are contained
+     */
+    public synchronized Map<Status, Integer> getCounts() {
+        Map<Status, Integer> counts = new EnumMap<>(Status.class);
+        for (Line line : lines) {
+            counts.merge(line.getStatus(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    public synchronized int getFileCount() {
+        return lines.size();
+    }
+
+    /**
+     * get the size of all files
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getTotalSize() {
+        long size = 0;
+        for (Line line : lines) {
+            size += line.getSize();
+        }
+        return size;
+    }
+
+    /**
+     * write the report, an existing report is replaced
+     *
+     * @param reportFile the report file
+     * @throws IOException
+     */
+    public synchronized void write(Path reportFile) throws IOException {
+        Files.createDirectories(reportFile.getParent());
+        Path tempFile = reportFile.resolveSibling(reportFile.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            out.write(String.join("\t", "status", "file", "size", "sha256", "checksumType", "expectedChecksum", "url"));
+            out.newLine();
+            for (Line line : lines) {
+                out.write(line.format());
+                out.newLine();
+            }
+        }
+        Files.move(tempFile, reportFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Line {
+        private String url;
+        private String file;
+        private long size;
+        private String sha256;
+        private String checksumType;
+        private String expectedChecksum;
+        private Status status;
+
+        private String format() {
+            return String.join("\t", status.name(), file, String.valueOf(size), StringUtils.defaultString(sha256),
+                    StringUtils.defaultString(checksumType), StringUtils.defaultString(expectedChecksum), url);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.apache.commons.lang3.StringUtils;
+
+import de.intranda.goobi.plugins.DownloadManifest.Entry;
+import de.intranda.goobi.plugins.DownloadManifest.State;
+import de.intranda.goobi.plugins.HttpTransfer.ChecksumMismatchException;
+import de.intranda.goobi.plugins.IntegrityReport.Line;
+import de.intranda.goobi.plugins.IntegrityReport.Status;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Downloads a list of files with a bounded number of parallel workers or with one virtual thread per file. The number of parallel connections
+ * against a single host is limited by {@link HttpTransfer}.
+ */
+@Log4j2
+public class MediaDownloader implements AutoCloseable {
+
+    private final ExecutorService executor;
+
+    // state of previous downloads, completed files are skipped
+    @Setter
+    private DownloadManifest manifest;
+
+    // collects the checksums and verification results, can be null
+    @Setter
+    private IntegrityReport integrityReport;
+
+    // store the files gzip compressed
+    @Setter
+    private boolean compress;
+
+    @Setter
+    private RetryPolicy retryPolicy = new RetryPolicy(4, Duration.ofSeconds(2), Duration.ofSeconds(60));
+
+    /**
+     * @param threads number of parallel downloads, ignored if virtual threads are used
+     * @param virtualThreads run each download on its own virtual thread
+     */
+    public MediaDownloader(int threads, boolean virtualThreads) {
+        if (virtualThreads) {
+            this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        } else {
+            this.executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        }
+    }
+
+    /**
+     * Download all files. Every file that could not be downloaded after all retries or that was downloaded with 0 bytes is passed to the given
+     * handler. If the handler returns false, all outstanding downloads are cancelled.
+     *
+     * @param files the files to download
+     * @param failedFileHandler decides if a missing or empty file can be ignored (true) or if the download must be aborted (false)
+     * @return false, if the download was aborted by the handler
+     * @throws IOException
+     */
+    public boolean downloadAll(List<DownloadFile> files, Predicate<DownloadFile> failedFileHandler) throws IOException {
+        CompletionService<Result> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<Result>> futures = new ArrayList<>(files.size());
+        for (DownloadFile file : files) {
+            futures.add(completionService.submit(() -> download(file)));
+        }
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                Result result = completionService.take().get();
+                DownloadFile file = result.getFile();
+                boolean empty = Files.isRegularFile(file.getTarget()) && Files.size(file.getTarget()) == 0;
+                boolean failed = result.getStatus() == Status.FAILED || result.getStatus() == Status.MISMATCH || empty;
+                MigrationMetrics.getInstance().fileDownloaded(!failed);
+                if (integrityReport != null) {
+                    Status status = empty ? Status.FAILED : result.getStatus();
+                    Entry entry = result.getEntry();
+                    integrityReport.add(new Line(file.getUrl(), file.getTarget().toString(), entry == null ? 0 : entry.getSize(),
+                            entry == null ? null : entry.getChecksum(), file.getChecksumType(), file.getChecksum(), status));
+                }
+                if (failed && !failedFileHandler.test(file)) {
+                    cancel(futures);
+                    return false;
+                }
+            }
+        } catch (InterruptedException e) {
+            cancel(futures);
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            cancel(futures);
+            throw new IOException(e.getCause());
+        }
+        return true;
+    }
+
+    private Result download(DownloadFile file) throws InterruptedException {
+        try {
+            if (file.isUnchanged()) {
+                Entry entry = getCompletedEntry(file);
+                if (entry != null) {
+                    // the file did not change in the source record, don't even revalidate it
+                    return new Result(file, entry, getVerificationStatus(file, entry, false));
+                }
+            }
+            Entry previous = manifest == null ? null : manifest.get(file.getTarget());
+            // each retry resumes the partial file of the previous attempt
+            Entry entry = retryPolicy.execute("Download of " + file.getUrl(),
+                    () -> HttpTransfer.download(file.getUrl(), file.getTarget(), manifest, file.getChecksumType(), file.getChecksum(), compress));
+            if (entry == null || entry.getState() == State.FAILED) {
+                return new Result(file, entry, Status.FAILED);
+            }
+            // the entry of the manifest is returned if the file was not modified, a new entry if its content was transferred
+            return new Result(file, entry, getVerificationStatus(file, entry, entry != previous));
+        } catch (ChecksumMismatchException e) {
+            log.error(e.getMessage());
+            return new Result(file, null, Status.MISMATCH);
+        } catch (IOException e) {
+            log.error("Error during download from {}: {}", file.getUrl(), e.getMessage());
+            return new Result(file, null, Status.FAILED);
+        }
+    }
+
+    /**
+     * get the verification status of a completed file. The checksum of the METS file was compared if the content was transferred, a mismatch
+     * would have failed the download. Files that were kept can only be verified by the SHA-256 checksum stored in the manifest.
+     *
+     * @param file the downloaded file
+     * @param entry the state of the file
+     * @param transferred true if the content was transferred now
+     * @return VERIFIED if the checksum of the METS file was compared
+     */
+    private static Status getVerificationStatus(DownloadFile file, Entry entry, boolean transferred) {
+        if (!HttpTransfer.isSupportedChecksumType(file.getChecksumType()) || StringUtils.isBlank(file.getChecksum())) {
+            return Status.NOT_VERIFIED;
+        }
+        if (transferred) {
+            return Status.VERIFIED;
+        }
+        boolean sha256 = "SHA256".equalsIgnoreCase(file.getChecksumType().replace("-", ""));
+        if (sha256 && file.getChecksum().trim().equalsIgnoreCase(entry.getChecksum())) {
+            return Status.VERIFIED;
+        }
+        return Status.NOT_VERIFIED;
+    }
+
+    /**
+     * get the manifest entry of a file that was downloaded completely from the same url and was not modified locally since
+     *
+     * @return the entry or null
+     */
+    private Entry getCompletedEntry(DownloadFile file) throws IOException {
+        Entry entry = manifest == null ? null : manifest.get(file.getTarget());
+        if (entry == null || entry.getState() != State.COMPLETE || !file.getUrl().equals(entry.getUrl())) {
+            return null;
+        }
+        return Files.isRegularFile(file.getTarget()) && Files.size(file.getTarget()) == entry.getSize() ? entry : null;
+    }
+
+    private void cancel(List<Future<Result>> futures) {
+        for (Future<Result> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            // cancelled downloads may still update the manifest
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Downloads did not terminate in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class Result {
+        private DownloadFile file;
+        // state of the file, null if the download failed after all retries
+        private Entry entry;
+        private Status status;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class DownloadFile {
+        private String id;
+        private String url;
+        private Path target;
+        // expected checksum from the METS file, can be null
+        private String checksumType;
+        private String checksum;
+        // true if the file is unchanged since the previous migration, a completed download is kept without a request
+        private boolean unchanged;
+    }
+}
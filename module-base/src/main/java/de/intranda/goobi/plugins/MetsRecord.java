@@ -0,0 +1,229 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom2.Element;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Compact representation of the parts of a METS file that are needed for the migration. The MODS sections are kept in their serialized form
+ * and parsed only while they are converted, everything else is reduced to simple value objects.
+ */
+@Getter
+public class MetsRecord {
+
+    // dmdSec ID -> serialized mods:mods element of the section
+    private Map<String, String> dmdSecs = new HashMap<>();
+
+    // USE -> files of the file group
+    private Map<String, List<MetsFile>> fileGroups = new LinkedHashMap<>();
+
+    // file ID -> file of any file group
+    private Map<String, MetsFile> filesById = new HashMap<>();
+
+    // page divs of the physical structMap, null if the record has no physical structMap
+    @Setter
+    private List<PhysicalDiv> pages;
+
+    // main div of the logical structMap
+    @Setter
+    private LogicalDiv logicalRoot;
+
+    private List<SmLink> links = new ArrayList<>();
+
+    // file ID -> ID of the first physical div that uses the file
+    private Map<String, String> pageIdsByFileId = new HashMap<>();
+
+    // physical div ID -> IDs of the logical divs linked to it
+    private Map<String, List<String>> logicalIdsByPageId = new HashMap<>();
+
+    /**
+     * add a file group and register all its files in the file index
+     *
+     * @param use the USE attribute of the file group
+     * @param files the files of the group
+     */
+    public void addFileGroup(String use, List<MetsFile> files) {
+        fileGroups.put(use, files);
+        for (MetsFile file : files) {
+            filesById.put(file.getId(), file);
+        }
+    }
+
+    /**
+     * find a file by its ID
+     *
+     * @param id the file ID as used in mets:fptr/@FILEID
+     * @return the file or null, if no file with this ID exists
+     */
+    public MetsFile getFile(String id) {
+        return filesById.get(id);
+    }
+
+    /**
+     * parse the MODS section of a dmdSec. A new element is created for each call, it can be discarded after it was converted.
+     *
+     * @param dmdId the ID of the dmdSec
+     * @return the mods:mods element or null, if the record does not contain the section
+     */
+    public Element getModsElement(String dmdId) {
+        String mods = dmdId == null ? null : dmdSecs.get(dmdId);
+        return mods == null ? null : MetsRecordReader.parseFragment(mods);
+    }
+
+    /**
+     * release the MODS sections and the logical structure after the record was converted. The files and the link index are kept for the
+     * downloads. Must not be called for records shared between processes, like cached anchor records.
+     */
+    public void releaseMetadata() {
+        dmdSecs = new HashMap<>();
+        logicalRoot = null;
+        links = new ArrayList<>();
+    }
+
+    /**
+     * build the reverse indexes from files to pages and from pages to logical elements. Must be called after the structMaps and the
+     * structLink were read.
+     */
+    public void buildLinkIndex() {
+        pageIdsByFileId.clear();
+        logicalIdsByPageId.clear();
+        if (pages != null) {
+            for (PhysicalDiv page : pages) {
+                for (String fileId : page.getFileIds()) {
+                    pageIdsByFileId.putIfAbsent(fileId, page.getId());
+                }
+            }
+        }
+        for (SmLink link : links) {
+            logicalIdsByPageId.computeIfAbsent(link.getTo(), k -> new ArrayList<>()).add(link.getFrom());
+        }
+    }
+
+    /**
+     * find the physical div that uses a file
+     *
+     * @param fileId the file ID
+     * @return the ID of the physical div or null, if the file is not used in the physical structMap
+     */
+    public String getPageId(String fileId) {
+        return pageIdsByFileId.get(fileId);
+    }
+
+    /**
+     * get the logical elements a physical div is linked to
+     *
+     * @param pageId the ID of the physical div
+     * @return the IDs of the linked logical divs, an empty list if the page is not linked
+     */
+    public List<String> getLinkedLogicalIds(String pageId) {
+        return logicalIdsByPageId.getOrDefault(pageId, Collections.emptyList());
+    }
+
+    /**
+     * check if a file is used on a page that is linked to a logical element
+     *
+     * @param fileId the file ID
+     * @return true, if the page of the file is linked
+     */
+    public boolean isFileLinked(String fileId) {
+        String pageId = getPageId(fileId);
+        return pageId != null && !getLinkedLogicalIds(pageId).isEmpty();
+    }
+
+    /**
+     * get the file group containing the images, MAX is used if available, DEFAULT otherwise
+     *
+     * @return the files or null, if no image file group exists
+     */
+    public List<MetsFile> getImageFileGroup() {
+        List<MetsFile> files = fileGroups.get("MAX");
+        if (files == null) {
+            files = fileGroups.get("DEFAULT");
+        }
+        return files;
+    }
+
+    /**
+     * get the file group containing the ALTO files
+     *
+     * @return the files or null, if no fulltext file group exists
+     */
+    public List<MetsFile> getFulltextFileGroup() {
+        return fileGroups.get("FULLTEXT");
+    }
+
+    @Getter
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class MetsFile {
+        private String id;
+        private String use;
+        private String mimeType;
+        private String url;
+        // algorithm of the checksum like MD5 or SHA-256, null if the file has no checksum
+        private String checksumType;
+        private String checksum;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class PhysicalDiv {
+        private String id;
+        private String order;
+        private String orderLabel;
+        private String contentIds;
+        private List<String> fileIds;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class LogicalDiv {
+        private String id;
+        private String dmdId;
+        private String type;
+        private String contentIds;
+        private String label;
+        // true if the div contains a mets:mptr
+        private boolean mptr;
+        private List<LogicalDiv> children;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class SmLink {
+        private String from;
+        private String to;
+    }
+}
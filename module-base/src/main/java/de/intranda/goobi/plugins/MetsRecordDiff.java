@@ -0,0 +1,106 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import de.intranda.goobi.plugins.MetsRecord.MetsFile;
+import lombok.Getter;
+
+/**
+ * Differences between the METS record of a previous migration and the current record of the source repository. It is used to skip the
+ * conversion of unchanged records and the download of unchanged media files.
+ */
+@Getter
+public class MetsRecordDiff {
+
+    // true if the MODS sections, the structMaps, the structLink or the mime type of an image differ
+    private final boolean metadataChanged;
+
+    // IDs of the files that are new or whose url, mime type or checksum changed
+    private final Set<String> changedFileIds;
+
+    // files of the previous record that are no longer contained in the current record or that are stored under a new name
+    private final List<MetsFile> removedFiles;
+
+    private MetsRecordDiff(boolean metadataChanged, Set<String> changedFileIds, List<MetsFile> removedFiles) {
+        this.metadataChanged = metadataChanged;
+        this.changedFileIds = changedFileIds;
+        this.removedFiles = removedFiles;
+    }
+
+    /**
+     * compare two versions of a record
+     *
+     * @param previous the record of the previous migration, can be null
+     * @param current the current record
+     * @return the differences, everything is changed if no previous record exists
+     */
+    public static MetsRecordDiff compare(MetsRecord previous, MetsRecord current) {
+        if (previous == null) {
+            return new MetsRecordDiff(true, new HashSet<>(current.getFilesById().keySet()), Collections.emptyList());
+        }
+
+        boolean changed = !Objects.equals(previous.getPages(), current.getPages())
+                || !Objects.equals(previous.getLogicalRoot(), current.getLogicalRoot()) || !previous.getLinks().equals(current.getLinks())
+                || !previous.getDmdSecs().equals(current.getDmdSecs());
+
+        Set<String> changedFileIds = new HashSet<>();
+        for (MetsFile file : current.getFilesById().values()) {
+            if (!file.equals(previous.getFile(file.getId()))) {
+                changedFileIds.add(file.getId());
+            }
+        }
+        Set<String> imageIds = new HashSet<>();
+        if (current.getImageFileGroup() != null) {
+            for (MetsFile file : current.getImageFileGroup()) {
+                imageIds.add(file.getId());
+            }
+        }
+        List<MetsFile> removedFiles = new ArrayList<>();
+        for (MetsFile file : previous.getFilesById().values()) {
+            MetsFile currentFile = current.getFile(file.getId());
+            if (currentFile == null) {
+                removedFiles.add(file);
+            } else if (imageIds.contains(file.getId()) && !Objects.equals(file.getMimeType(), currentFile.getMimeType())) {
+                // the extension of the image is derived from the mime type, the metadata file refers to the old name
+                removedFiles.add(file);
+                changed = true;
+            }
+        }
+        return new MetsRecordDiff(changed, changedFileIds, removedFiles);
+    }
+
+    /**
+     * check if a file is contained unchanged in both records
+     *
+     * @param fileId the file ID
+     * @return true, if the file was not changed
+     */
+    public boolean isFileUnchanged(String fileId) {
+        return !changedFileIds.contains(fileId);
+    }
+}
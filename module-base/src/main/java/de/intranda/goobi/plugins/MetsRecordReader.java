@@ -0,0 +1,326 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.StAXStreamBuilder;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+
+import de.intranda.goobi.plugins.MetsRecord.LogicalDiv;
+import de.intranda.goobi.plugins.MetsRecord.MetsFile;
+import de.intranda.goobi.plugins.MetsRecord.PhysicalDiv;
+import de.intranda.goobi.plugins.MetsRecord.SmLink;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Streaming reader for METS files. The file is read once with StAX, only the sections needed for the migration are extracted into a
+ * {@link MetsRecord}. The METS file can be embedded in an OAI-PMH GetRecord response or be the root element of the document.
+ */
+@Log4j2
+public class MetsRecordReader {
+
+    private static final String METS_NS = MigrateVisualLibraryToGoobiStepPlugin.mets.getURI();
+    private static final String MODS_NS = MigrateVisualLibraryToGoobiStepPlugin.mods.getURI();
+    private static final String XLINK_NS = MigrateVisualLibraryToGoobiStepPlugin.xlink.getURI();
+    private static final String OAI_NS = MigrateVisualLibraryToGoobiStepPlugin.oaiNamespace.getURI();
+
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+    // the raw format keeps the serialization of unchanged sections identical
+    private static final XMLOutputter OUTPUTTER = new XMLOutputter(Format.getRawFormat());
+
+    static {
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    private MetsRecordReader() {
+    }
+
+    /**
+     * read a METS file from disc
+     *
+     * @param file the METS file or OAI-PMH response
+     * @return the record or null, if the file does not contain a METS element
+     * @throws IOException
+     */
+    public static MetsRecord read(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return read(FACTORY.createXMLStreamReader(in));
+        } catch (XMLStreamException | JDOMException e) {
+            throw new IOException("Cannot parse METS file " + file, e);
+        }
+    }
+
+    /**
+     * read a METS record from an already parsed element, used for JUnit tests
+     *
+     * @param element the METS element or OAI-PMH response
+     * @return the record or null, if the element does not contain a METS element
+     * @throws IOException
+     */
+    public static MetsRecord read(Element element) throws IOException {
+        try (Reader in = new StringReader(new XMLOutputter().outputString(element))) {
+            return read(FACTORY.createXMLStreamReader(in));
+        } catch (XMLStreamException | JDOMException e) {
+            throw new IOException("Cannot parse METS element", e);
+        }
+    }
+
+    private static MetsRecord read(XMLStreamReader reader) throws XMLStreamException, JDOMException {
+        MetsRecord rec = null;
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if (OAI_NS.equals(reader.getNamespaceURI()) && "error".equals(reader.getLocalName())) {
+                    log.error(reader.getElementText());
+                } else if (rec == null && isMets(reader, "mets")) {
+                    rec = readMets(reader);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return rec;
+    }
+
+    private static MetsRecord readMets(XMLStreamReader reader) throws XMLStreamException, JDOMException {
+        MetsRecord rec = new MetsRecord();
+        while (nextChild(reader)) {
+            if (isMets(reader, "dmdSec")) {
+                readDmdSec(reader, rec);
+            } else if (isMets(reader, "fileSec")) {
+                readFileSec(reader, rec);
+            } else if (isMets(reader, "structMap") && "LOGICAL".equals(reader.getAttributeValue(null, "TYPE"))) {
+                readLogicalStructMap(reader, rec);
+            } else if (isMets(reader, "structMap") && "PHYSICAL".equals(reader.getAttributeValue(null, "TYPE"))) {
+                readPhysicalStructMap(reader, rec);
+            } else if (isMets(reader, "structLink")) {
+                readStructLink(reader, rec);
+            } else {
+                // metsHdr, amdSec, ...
+                skip(reader);
+            }
+        }
+        rec.buildLinkIndex();
+        return rec;
+    }
+
+    private static void readDmdSec(XMLStreamReader reader, MetsRecord rec) throws XMLStreamException, JDOMException {
+        String id = reader.getAttributeValue(null, "ID");
+        int depth = 1;
+        int event = reader.next();
+        while (true) {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (MODS_NS.equals(reader.getNamespaceURI()) && "mods".equals(reader.getLocalName()) && !rec.getDmdSecs().containsKey(id)) {
+                    // the builder consumes the whole mods element, the reader is positioned at the event after its end tag.
+                    // Only the serialized element is kept, the tree is released right away
+                    Element modsElement = (Element) new StAXStreamBuilder().fragment(reader);
+                    rec.getDmdSecs().put(id, OUTPUTTER.outputString(modsElement));
+                    event = reader.getEventType();
+                    continue;
+                }
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                if (depth == 0) {
+                    return;
+                }
+            }
+            event = reader.next();
+        }
+    }
+
+    private static void readFileSec(XMLStreamReader reader, MetsRecord rec) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (!isMets(reader, "fileGrp")) {
+                skip(reader);
+                continue;
+            }
+            String use = reader.getAttributeValue(null, "USE");
+            List<MetsFile> files = new ArrayList<>();
+            while (nextChild(reader)) {
+                if (!isMets(reader, "file")) {
+                    skip(reader);
+                    continue;
+                }
+                String id = reader.getAttributeValue(null, "ID");
+                String mimeType = reader.getAttributeValue(null, "MIMETYPE");
+                String checksumType = reader.getAttributeValue(null, "CHECKSUMTYPE");
+                String checksum = reader.getAttributeValue(null, "CHECKSUM");
+                String url = null;
+                while (nextChild(reader)) {
+                    if (url == null && isMets(reader, "FLocat")) {
+                        url = reader.getAttributeValue(XLINK_NS, "href");
+                    }
+                    skip(reader);
+                }
+                files.add(new MetsFile(id, use, mimeType, url, checksumType, checksum));
+            }
+            rec.addFileGroup(use, files);
+        }
+    }
+
+    private static void readPhysicalStructMap(XMLStreamReader reader, MetsRecord rec) throws XMLStreamException {
+        List<PhysicalDiv> pages = new ArrayList<>();
+        boolean sequenceFound = false;
+        while (nextChild(reader)) {
+            if (sequenceFound || !isMets(reader, "div")) {
+                skip(reader);
+                continue;
+            }
+            sequenceFound = true;
+            while (nextChild(reader)) {
+                if (!isMets(reader, "div")) {
+                    skip(reader);
+                    continue;
+                }
+                String id = reader.getAttributeValue(null, "ID");
+                String order = reader.getAttributeValue(null, "ORDER");
+                String orderLabel = reader.getAttributeValue(null, "ORDERLABEL");
+                String contentIds = reader.getAttributeValue(null, "CONTENTIDS");
+                List<String> fileIds = new ArrayList<>();
+                while (nextChild(reader)) {
+                    if (isMets(reader, "fptr")) {
+                        fileIds.add(reader.getAttributeValue(null, "FILEID"));
+                    }
+                    skip(reader);
+                }
+                pages.add(new PhysicalDiv(id, order, orderLabel, contentIds, fileIds));
+            }
+        }
+        rec.setPages(pages);
+    }
+
+    private static void readLogicalStructMap(XMLStreamReader reader, MetsRecord rec) throws XMLStreamException {
+        LogicalDiv root = null;
+        while (nextChild(reader)) {
+            if (root == null && isMets(reader, "div")) {
+                root = readLogicalDiv(reader);
+            } else {
+                skip(reader);
+            }
+        }
+        rec.setLogicalRoot(root);
+    }
+
+    private static LogicalDiv readLogicalDiv(XMLStreamReader reader) throws XMLStreamException {
+        String id = reader.getAttributeValue(null, "ID");
+        String dmdId = reader.getAttributeValue(null, "DMDID");
+        String type = reader.getAttributeValue(null, "TYPE");
+        String contentIds = reader.getAttributeValue(null, "CONTENTIDS");
+        String label = reader.getAttributeValue(null, "LABEL");
+        boolean mptr = false;
+        List<LogicalDiv> children = new ArrayList<>();
+        while (nextChild(reader)) {
+            if (isMets(reader, "div")) {
+                children.add(readLogicalDiv(reader));
+            } else {
+                if (isMets(reader, "mptr")) {
+                    mptr = true;
+                }
+                skip(reader);
+            }
+        }
+        return new LogicalDiv(id, dmdId, type, contentIds, label, mptr, children);
+    }
+
+    private static void readStructLink(XMLStreamReader reader, MetsRecord rec) throws XMLStreamException {
+        while (nextChild(reader)) {
+            rec.getLinks().add(new SmLink(reader.getAttributeValue(XLINK_NS, "from"), reader.getAttributeValue(XLINK_NS, "to")));
+            skip(reader);
+        }
+    }
+
+    /**
+     * parse a serialized MODS section
+     *
+     * @param xml the section as written by the reader
+     * @return the root element of the section
+     */
+    static Element parseFragment(String xml) {
+        try (Reader in = new StringReader(xml)) {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+            try {
+                return new StAXStreamBuilder().build(reader).detachRootElement();
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | XMLStreamException | JDOMException e) {
+            // the section was serialized by the reader, so it is always well-formed
+            throw new IllegalStateException("Cannot parse MODS section", e);
+        }
+    }
+
+    /**
+     * move to the next child element of the current element
+     *
+     * @return true, if the reader is positioned at the start of a child element, false if the end of the current element was reached
+     */
+    private static boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * skip the current element including all children, the reader is positioned at the end tag afterwards
+     */
+    private static void skip(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static boolean isMets(XMLStreamReader reader, String name) {
+        return METS_NS.equals(reader.getNamespaceURI()) && name.equals(reader.getLocalName());
+    }
+}
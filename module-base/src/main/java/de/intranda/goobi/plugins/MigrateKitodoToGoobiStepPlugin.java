@@ -1,19 +1,7 @@
 package de.intranda.goobi.plugins;
 
-import java.io.File;
-import java.io.IOException;
-
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.lang3.StringUtils;
-import org.goobi.production.enums.LogType;
 import org.goobi.production.plugin.interfaces.IStepPluginVersion2;
-import org.jdom2.Document;
-import org.jdom2.Element;
 
-import de.sub.goobi.helper.Helper;
-import de.sub.goobi.helper.XmlTools;
-import de.sub.goobi.helper.exceptions.SwapException;
-import io.goobi.workflow.api.connection.HttpUtils;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 import net.xeoh.plugins.base.annotations.PluginImplementation;
@@ -44,39 +32,6 @@ public class MigrateKitodoToGoobiStepPlugin extends MigrateVisualLibraryToGoobiS
     @Getter
     private String title = "intranda_step_migrate_kitodo_to_goobi";
 
-    /**
-     * get the METS file from the OAI-Interface for a given identifier
-     *
-     * @param identifier
-     * @return
-     * @throws SwapException
-     * @throws IOException
-     */
-    @Override
-    public Element getRecord(String identifier) throws IOException, SwapException {
-
-        Helper.addMessageToProcessJournal(process.getId(), LogType.DEBUG, "Try to analyze METS file from: " + identifier,
-                "Migration Plugin");
-
-        if (StringUtils.isNotBlank(identifier)) {
-            log.info("Get record for pid " + identifier);
-
-            // get METS-File from VL and store it inside of the import folder
-            String xmlDocument = HttpUtils.getStringFromUrl(getDownloadUrl(identifier));
-            FileUtils.write(new File(process.getImportDirectory(), "/oai_mets_" + identifier + ".xml"), xmlDocument, "UTF-8");
-
-            // parse METS-File now
-            Document document = XmlTools.readDocumentFromString(xmlDocument);
-
-            Element rec = document.getRootElement();
-
-            return rec;
-
-        }
-
-        return null;
-    }
-
     @Override
     public String getDownloadUrl(String identifier) {
         return downloadUrl.replace("{identifier}", identifier);
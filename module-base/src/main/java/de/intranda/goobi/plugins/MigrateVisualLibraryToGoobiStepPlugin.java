@@ -1,13 +1,14 @@
 package de.intranda.goobi.plugins;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.net.http.HttpClient;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 
 /**
  * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
@@ -29,11 +30,20 @@ import java.util.ArrayList;
  */
 
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 
+import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.commons.configuration.SubnodeConfiguration;
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
 import org.apache.commons.lang3.StringUtils;
 import org.goobi.beans.GoobiProperty;
 import org.goobi.beans.GoobiProperty.PropertyOwnerType;
@@ -45,26 +55,28 @@ import org.goobi.production.enums.PluginReturnValue;
 import org.goobi.production.enums.PluginType;
 import org.goobi.production.enums.StepReturnValue;
 import org.goobi.production.plugin.interfaces.IStepPluginVersion2;
-import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.Namespace;
 
+import de.intranda.goobi.plugins.MediaDownloader.DownloadFile;
+import de.intranda.goobi.plugins.MetsRecord.LogicalDiv;
+import de.intranda.goobi.plugins.MetsRecord.MetsFile;
+import de.intranda.goobi.plugins.MetsRecord.PhysicalDiv;
+import de.intranda.goobi.plugins.MetsRecord.SmLink;
 import de.sub.goobi.config.ConfigPlugins;
 import de.sub.goobi.config.ConfigurationHelper;
 import de.sub.goobi.helper.BeanHelper;
 import de.sub.goobi.helper.Helper;
-import de.sub.goobi.helper.RetryUtils;
-import de.sub.goobi.helper.XmlTools;
 import de.sub.goobi.helper.exceptions.DAOException;
 import de.sub.goobi.helper.exceptions.SwapException;
 import de.sub.goobi.persistence.managers.ProcessManager;
 import de.sub.goobi.persistence.managers.PropertyManager;
-import io.goobi.workflow.api.connection.HttpUtils;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.log4j.Log4j2;
 import net.xeoh.plugins.base.annotations.PluginImplementation;
+import ugh.dl.ContentFile;
 import ugh.dl.DigitalDocument;
 import ugh.dl.DocStruct;
 import ugh.dl.DocStructType;
@@ -117,60 +129,48 @@ public class MigrateVisualLibraryToGoobiStepPlugin implements IStepPluginVersion
     protected static final Namespace mods = Namespace.getNamespace("mods", "http://www.loc.gov/mods/v3");
     protected static final Namespace oaiNamespace = Namespace.getNamespace("oai", "http://www.openarchives.org/OAI/2.0/");
 
-    private Map<String, Element> dmdSecMap = new HashMap<>();
-    private Element imageFileGroup = null;
-    private Element altoFileGroup = null;
-    private Element logicalStructMap = null;
-    private Element physicalStructMap = null;
-    private Element structLink = null;
-    private transient List<ImageName> imageFiles = new ArrayList<>();
-
-    private Map<String, DocStruct> pageMap = new HashMap<>();
-    private Map<String, DocStruct> docstructMap = new HashMap<>();
+    // state of the record that is currently migrated, replaced for each record
+    private transient ConversionContext context = new ConversionContext();
 
     private DocStructType pageType;
     private DocStructType coverDocStructType;
     private DocStructType otherDocStructType;
     private DocStructType boundBookType;
-    private MetadataType modsUrnType;
     private MetadataType phyPageNumberType;
     private MetadataType logPageNumberType;
     private MetadataType urnType;
     private MetadataType titleType;
-    private MetadataType otherTitleType;
-    private MetadataType subTitleType;
-    private MetadataType partNumberType;
-    private MetadataType partNameType;
-    private MetadataType collectionType;
-    private MetadataType sourceType;
-    private MetadataType physicalLocationType;
-    private MetadataType shelfLocatorType;
-    private MetadataType placeOfElectronicOriginType;
-    private MetadataType dateDigitizationType;
-    private MetadataType electronicPublisherType;
-    private MetadataType electronicEditionType;
-
-    private MetadataType authorType;
-    private MetadataType engraverType;
-    private MetadataType honoreeType;
-    private MetadataType editorType;
-    private MetadataType otherPersonType;
-    private MetadataType publicationYearType;
-    private MetadataType placeOfPublicationType;
-    private MetadataType publisherNameType;
-    private MetadataType extentType;
-    private MetadataType languageType;
-    private MetadataType formatType;
-    private MetadataType responsibilityType;
-    private MetadataType titleMainSeriesType;
-    private MetadataType seriesOrderType;
-    private MetadataType catalogIDMainSeriesType;
-    private MetadataType purlType;
+
+    // compiled mapping of MODS elements to metadata and persons
+    private ModsMapping modsMapping;
+    // number of threads converting the MODS sections of the logical structure, 1 to convert them while the structure is created
+    private int conversionThreads = 1;
 
     protected String downloadUrl;
 
+    // number of parallel downloads
+    private int downloadThreads = 4;
+    // run each download on its own virtual thread instead of using a fixed number of threads
+    private boolean useVirtualThreads = false;
+    // start the media downloads while the record is still converted
+    private boolean pipelineDownloads = true;
+    // number of parallel ALTO downloads, ALTO files are small, so more requests can run at the same time
+    private int fulltextThreads = 4;
+    // store the ALTO files gzip compressed, for archival only as Goobi cannot read them
+    private boolean compressFulltexts = false;
+
+    // retries of failed downloads
+    private RetryPolicy retryPolicy = new RetryPolicy(4, Duration.ofSeconds(2), Duration.ofSeconds(60));
+
+    // cache for downloaded METS records, null if disabled
+    private RecordCache recordCache;
+
+    // compare the record with the METS file of the previous migration and keep unchanged metadata and media
+    private boolean incremental = false;
+
+    // shared with all processes using the same ruleset, must not be modified
+    private RulesetMapping rulesetMapping;
     private Map<String, String> docStructRulesetNames = new HashMap<>();
-    private DocStruct logical;
     @Setter // for testing
     private BeanHelper beanHelper;
 
@@ -179,66 +179,119 @@ public class MigrateVisualLibraryToGoobiStepPlugin implements IStepPluginVersion
      */
     @Override
     public void initialize(Step step, String returnPath) {
+        initialize(step, RulesetMapping.load(step.getProzess().getRegelsatz()));
+    }
+
+    /**
+     * Initialize the plugin with an already loaded ruleset, used by {@link MigrationBatch} to share the ruleset between many processes
+     *
+     * @param step the step to execute
+     * @param rulesetMapping the ruleset of the process
+     */
+    public void initialize(Step step, RulesetMapping rulesetMapping) {
         this.step = step;
         this.process = step.getProzess();
         beanHelper = new BeanHelper();
-        prefs = process.getRegelsatz().getPreferences();
-
-        pageType = prefs.getDocStrctTypeByName("page");
-        phyPageNumberType = prefs.getMetadataTypeByName("physPageNumber");
-        logPageNumberType = prefs.getMetadataTypeByName("logicalPageNumber");
-        urnType = prefs.getMetadataTypeByName("_urn");
-        modsUrnType = prefs.getMetadataTypeByName("URN");
-
-        boundBookType = prefs.getDocStrctTypeByName("BoundBook");
-        otherDocStructType = prefs.getDocStrctTypeByName("OtherDocStrct");
-        coverDocStructType = prefs.getDocStrctTypeByName("Cover");
-        titleType = prefs.getMetadataTypeByName("TitleDocMain");
-        otherTitleType = prefs.getMetadataTypeByName("OtherTitle");
-        collectionType = prefs.getMetadataTypeByName("singleDigCollection");
-        sourceType = prefs.getMetadataTypeByName("CatalogIDSource");
-        physicalLocationType = prefs.getMetadataTypeByName("PhysicalLocation");
-        shelfLocatorType = prefs.getMetadataTypeByName("shelfmarksource");
-        languageType = prefs.getMetadataTypeByName("DocLanguage");
-        publicationYearType = prefs.getMetadataTypeByName("PublicationYear");
-        placeOfPublicationType = prefs.getMetadataTypeByName("PlaceOfPublication");
-        publisherNameType = prefs.getMetadataTypeByName("PublisherName");
-        placeOfElectronicOriginType = prefs.getMetadataTypeByName("_placeOfElectronicOrigin");
-        dateDigitizationType = prefs.getMetadataTypeByName("_dateDigitization");
-        electronicPublisherType = prefs.getMetadataTypeByName("_electronicPublisher");
-        electronicEditionType = prefs.getMetadataTypeByName("_electronicEdition");
-        extentType = prefs.getMetadataTypeByName("physicalDescriptionExtent");
-        subTitleType = prefs.getMetadataTypeByName("TitleDocSub1");
-        partNumberType = prefs.getMetadataTypeByName("VolumeNumber");
-        partNameType = prefs.getMetadataTypeByName("VolumeName");
-        formatType = prefs.getMetadataTypeByName("FormatSourcePrint");
-        authorType = prefs.getMetadataTypeByName("Author");
-        editorType = prefs.getMetadataTypeByName("Editor");
-        honoreeType = prefs.getMetadataTypeByName("Honoree");
-        engraverType = prefs.getMetadataTypeByName("Engraver");
-        responsibilityType = prefs.getMetadataTypeByName("TitleDocMainResponsibility");
-        otherPersonType = prefs.getMetadataTypeByName("OtherPerson");
-
-        titleMainSeriesType = prefs.getMetadataTypeByName("TitleMainSeries");
-        seriesOrderType = prefs.getMetadataTypeByName("SeriesOrder");
-        catalogIDMainSeriesType = prefs.getMetadataTypeByName("CatalogIDMainSeries");
-        purlType = prefs.getMetadataTypeByName("_purl");
+        initializeTypes(rulesetMapping);
 
         // just in case it is not a JUnit test
         if (testResponse == null) {
             SubnodeConfiguration config = ConfigPlugins.getProjectAndStepConfig(title, step);
             downloadUrl = getProcessProperty(step.getProzess(), config.getString("/downloadUrl"));
+            downloadThreads = config.getInt("/download/@threads", downloadThreads);
+            useVirtualThreads = "virtual".equalsIgnoreCase(config.getString("/download/@mode", "platform"));
+            pipelineDownloads = config.getBoolean("/download/@pipeline", pipelineDownloads);
+            fulltextThreads = config.getInt("/fulltext/@threads", downloadThreads);
+            compressFulltexts = "gzip".equalsIgnoreCase(config.getString("/fulltext/@compression", "none"));
+            incremental = config.getBoolean("/incremental/@enabled", incremental);
+            conversionThreads = config.getInt("/conversion/@threads", conversionThreads);
+            configureHttpClient();
+            configureModsMapping(config);
+            retryPolicy = new RetryPolicy(config.getInt("/retry/@attempts", 4), Duration.ofSeconds(config.getInt("/retry/@initialDelay", 2)),
+                    Duration.ofSeconds(config.getInt("/retry/@maxDelay", 60)));
+            if (config.getBoolean("/recordCache/@enabled", false)) {
+                String cacheFolder = config.getString("/recordCache/@folder");
+                if (StringUtils.isBlank(cacheFolder)) {
+                    cacheFolder = Paths.get(ConfigurationHelper.getInstance().getTemporaryFolder(), "visual_library_record_cache").toString();
+                }
+                recordCache = new RecordCache(Paths.get(cacheFolder), config.getInt("/recordCache/@anchorRecords", 100),
+                        config.getInt("/recordCache/@anchorMaxAge", 600), config.getInt("/recordCache/@maxAge", 30));
+            }
         }
+    }
 
-        Path rulesetPath = Paths.get(ConfigurationHelper.getInstance().getRulesetFolder(), process.getRegelsatz().getDatei());
-        Document rulesetDocument = XmlTools.readDocumentFromFile(rulesetPath);
-        Element metsElement = rulesetDocument.getRootElement().getChild("Formats").getChild("METS");
+    /**
+     * configure the client shared by all downloads of the application. The settings are read from the section for all projects and steps only,
+     * otherwise the processes of different projects would change the limits of each other.
+     */
+    private void configureHttpClient() {
+        HierarchicalConfiguration config;
+        try {
+            XMLConfiguration pluginConfig = ConfigPlugins.getPluginConfig(title);
+            pluginConfig.setExpressionEngine(new XPathExpressionEngine());
+            config = pluginConfig.configurationAt("//config[./project = '*'][./step = '*']");
+        } catch (IllegalArgumentException e) {
+            log.warn("No configuration for all projects and steps found, use the default settings for the HTTP client");
+            config = new HierarchicalConfiguration();
+            config.setExpressionEngine(new XPathExpressionEngine());
+        }
+        HttpClient.Version version = "HTTP_1_1".equalsIgnoreCase(config.getString("/http/@version", "HTTP_2")) ? HttpClient.Version.HTTP_1_1
+                : HttpClient.Version.HTTP_2;
+        String proxyHost = null;
+        int proxyPort = 0;
+        ConfigurationHelper configurationHelper = ConfigurationHelper.getInstance();
+        if (configurationHelper.isUseProxy()) {
+            proxyHost = configurationHelper.getProxyUrl();
+            proxyPort = configurationHelper.getProxyPort();
+        }
+        int maxConcurrent = config.getInt("/rateLimit/@maxConcurrent", config.getInt("/download/@connectionsPerHost", 2));
+        HttpTransfer.configure(new HttpTransfer.Settings(version, config.getInt("/http/@connectTimeout", 30), config.getInt("/http/@readTimeout", 300),
+                maxConcurrent, config.getDouble("/rateLimit/@requestsPerSecond", 0), config.getInt("/rateLimit/@burst", 1), proxyHost, proxyPort,
+                config.getInt("/circuitBreaker/@failures", 5), config.getInt("/circuitBreaker/@openTime", 60)));
+    }
 
-        List<Element> docstructs = metsElement.getChildren("DocStruct");
-        for (Element ds : docstructs) {
-            docStructRulesetNames.put(ds.getChildText("MetsType").toLowerCase(), ds.getChildText("InternalName"));
+    /**
+     * read the MODS mapping from the configuration, the default mapping is kept if the configuration does not contain rules
+     *
+     * @param config the plugin configuration
+     */
+    private void configureModsMapping(SubnodeConfiguration config) {
+        List<ModsMapping.Rule> rules = new ArrayList<>();
+        for (HierarchicalConfiguration metadata : config.configurationsAt("/modsMapping/metadata")) {
+            rules.add(ModsMapping.Rule.metadata(metadata.getString("@path"), metadata.getString("@type")));
+        }
+        for (HierarchicalConfiguration person : config.configurationsAt("/modsMapping/person")) {
+            Map<String, String> roles = new LinkedHashMap<>();
+            for (HierarchicalConfiguration role : person.configurationsAt("role")) {
+                roles.put(role.getString("@code"), role.getString("@type"));
+            }
+            rules.add(ModsMapping.Rule.person(person.getString("@path"), person.getString("@type"), person.getString("@defaultRole"), roles));
+        }
+        if (!rules.isEmpty()) {
+            modsMapping = rulesetMapping.getModsMapping(rules);
         }
+    }
 
+    /**
+     * get all metadata and docstruct types used during the conversion from the ruleset
+     *
+     * @param rulesetMapping the ruleset of the process
+     */
+    void initializeTypes(RulesetMapping rulesetMapping) {
+        this.rulesetMapping = rulesetMapping;
+        this.prefs = rulesetMapping.getPrefs();
+        docStructRulesetNames = rulesetMapping.getDocStructRulesetNames();
+
+        pageType = rulesetMapping.getDocStructType("page");
+        phyPageNumberType = rulesetMapping.getMetadataType("physPageNumber");
+        logPageNumberType = rulesetMapping.getMetadataType("logicalPageNumber");
+        urnType = rulesetMapping.getMetadataType("_urn");
+
+        boundBookType = rulesetMapping.getDocStructType("BoundBook");
+        otherDocStructType = rulesetMapping.getDocStructType("OtherDocStrct");
+        coverDocStructType = rulesetMapping.getDocStructType("Cover");
+        titleType = rulesetMapping.getMetadataType("TitleDocMain");
+        modsMapping = rulesetMapping.getModsMapping(ModsMapping.DEFAULT_RULES);
     }
 
     /**
@@ -246,6 +299,93 @@ public class MigrateVisualLibraryToGoobiStepPlugin implements IStepPluginVersion
      */
     @Override
     public boolean execute() {
+        boolean result;
+        if (testResponse != null || !pipelineDownloads) {
+            result = convert() && downloadMedia();
+        } else {
+            result = executePipelined();
+        }
+        MigrationMetrics.getInstance().recordMigrated(result);
+        finishRecord();
+        return result;
+    }
+
+    /**
+     * add the timing summary of the migrated record to the journal and discard its state
+     */
+    void finishRecord() {
+        writeTimingSummary();
+        context = new ConversionContext();
+    }
+
+    /**
+     * download the media files while the record is converted and saved
+     *
+     * @return false if the conversion failed or an image could not be downloaded
+     */
+    private boolean executePipelined() {
+        context = new ConversionContext();
+        context.setIntegrityReport(new IntegrityReport());
+        // the manifest is closed after all downloads are finished
+        // running downloads are interrupted if the conversion or a download fails
+        try (DownloadManifest manifest = openManifest(); DownloadPipeline pipeline = new DownloadPipeline(2)) {
+            long start = System.nanoTime();
+            if (!convert(pipeline, manifest)) {
+                return false;
+            }
+            if (!pipeline.await(context.getImageDownload(), context.getFulltextDownload())) {
+                // an image is missing, the remaining fulltexts are not downloaded
+                return false;
+            }
+            // the downloads started during the conversion
+            context.setDownloadNanos(System.nanoTime() - start);
+            MigrationMetrics.getInstance().addDownloadTime(context.getDownloadNanos());
+            writeIntegrityReport();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | IOException | SwapException e) {
+            log.error("Error while downloading the media files", e);
+            return false;
+        }
+    }
+
+    /**
+     * first part of the migration: get the METS record, convert it into the metadata of the process and save the process
+     *
+     * @return true if the metadata was saved
+     */
+    public boolean convert() {
+        context = new ConversionContext();
+        return convert(null, null);
+    }
+
+    /**
+     * convert the record. If a pipeline is given, the image download is started as soon as the fileSec of the record is known and the
+     * fulltext download as soon as the pages are converted.
+     *
+     * @param pipeline pipeline for the downloads, null to skip them
+     * @param manifest the download manifest of the process
+     * @return true if the metadata was saved
+     */
+    private boolean convert(DownloadPipeline pipeline, DownloadManifest manifest) {
+        long start = System.nanoTime();
+        try {
+            return convertRecord(pipeline, manifest);
+        } finally {
+            if (context.getRecordBaseline() != null) {
+                // nothing left after a successful conversion
+                context.getRecordBaseline().discard();
+            }
+            context.releaseMetadata();
+            context.setConversionNanos(System.nanoTime() - start - context.getMetsFetchNanos());
+            MigrationMetrics.getInstance().addMetsFetchTime(context.getMetsFetchNanos());
+            MigrationMetrics.getInstance().addConversionTime(context.getConversionNanos());
+        }
+    }
+
+    private boolean convertRecord(DownloadPipeline pipeline, DownloadManifest manifest) {
 
         try {
             // read mets file
@@ -254,7 +394,7 @@ public class MigrateVisualLibraryToGoobiStepPlugin implements IStepPluginVersion
             DigitalDocument digitalDocument = fileformat.getDigitalDocument();
 
             DocStruct anchor = null;
-            logical = digitalDocument.getLogicalDocStruct();
+            DocStruct logical = digitalDocument.getLogicalDocStruct();
             if (logical.getType().isAnchor()) {
                 anchor = logical;
                 logical = logical.getAllChildren().get(0);
@@ -277,58 +417,78 @@ public class MigrateVisualLibraryToGoobiStepPlugin implements IStepPluginVersion
                 return false;
             }
             log.info("Get data for record " + identifier);
-            // clean current structure, remove all pages + structure elements
-            // check if pagination was already written
-            List<DocStruct> pages = physical.getAllChildren();
-            if (pages != null && !pages.isEmpty()) {
-                // process contains data, clear it
-                for (DocStruct page : pages) {
-                    digitalDocument.getFileSet().removeFile(page.getAllContentFiles().get(0));
-                    List<Reference> refs = new ArrayList<>(page.getAllFromReferences());
-                    for (ugh.dl.Reference ref : refs) {
-                        ref.getSource().removeReferenceTo(page);
-                    }
-                }
-                while (physical.getAllChildren() != null && !physical.getAllChildren().isEmpty()) {
-                    physical.removeChild(physical.getAllChildren().get(0));
-                }
-                while (logical.getAllChildren() != null && !logical.getAllChildren().isEmpty()) {
-                    logical.removeChild(logical.getAllChildren().get(0));
-                }
-            }
 
             // use id to search in and/or ddb
             // get mets record
-            Element element = getRecord(identifier);
-            if (element == null) {
+            MetsRecord rec = getRecord(identifier);
+            if (rec == null) {
                 // no  record found
                 Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR, "No  record found for ID " + identifier,
                         "Migration Plugin");
                 return false;
             }
+            // the downloads get the context of this record, it is not replaced while they are running
+            ConversionContext recordContext = context;
+            Map<String, MetsRecord> previousRecords = recordContext.getPreviousRecords();
+            MetsRecordDiff recordDiff = incremental ? MetsRecordDiff.compare(previousRecords.get(identifier), rec) : null;
+            recordContext.setRecordDiff(recordDiff);
+            if (recordDiff != null) {
+                deleteRemovedMedia(previousRecords.get(identifier), recordDiff);
+            }
+            if (pipeline != null) {
+                readImageFiles(rec);
+                List<ImageName> files = recordContext.getImageFiles();
+                recordContext.setImageDownload(pipeline.submit(() -> downloadImages(recordContext, files, manifest)));
+            }
 
+            boolean anchorChanged = false;
             if (StringUtils.isNotBlank(anchorIdentifier)) {
-                Element anchorRecord = getRecord(anchorIdentifier);
+                MetsRecord anchorRecord = getRecord(anchorIdentifier, true);
                 if (anchorRecord != null) {
-                    String mdId = "md" + anchorIdentifier;
-                    List<Element> dmdSections = anchorRecord.getChildren("dmdSec", mets);
-                    for (Element dmdSec : dmdSections) {
-                        if (mdId.equals(dmdSec.getAttributeValue("ID"))) {
-                            parseModsElement(dmdSec, anchor);
-                        }
+                    // the anchor record can be shared with other processes, its sections are parsed without modifying it
+                    Element modsElement = anchorRecord.getModsElement("md" + anchorIdentifier);
+                    if (modsElement != null) {
+                        parseModsElement(modsElement, anchor);
+                    }
+                    anchorChanged = incremental && MetsRecordDiff.compare(previousRecords.get(anchorIdentifier), anchorRecord).isMetadataChanged();
+                }
+            }
+
+            // clean current structure, remove all pages + structure elements
+            // check if pagination was already written
+            List<DocStruct> pages = physical.getAllChildren();
+            if (pages != null && !pages.isEmpty()) {
+                if (recordDiff != null && !recordDiff.isMetadataChanged() && !anchorChanged) {
+                    // the process was migrated from the same record before, keep its metadata
+                    readImageFiles(rec);
+                    if (pipeline != null) {
+                        recordContext.setFulltextDownload(pipeline.submit(() -> downloadFulltexts(recordContext, manifest)));
                     }
+                    Helper.addMessageToProcessJournal(process.getId(), LogType.INFO,
+                            "The metadata of record " + identifier + " is unchanged, " + recordDiff.getChangedFileIds().size()
+                                    + " media files are new or changed.",
+                            "Migration Plugin");
+                    commitRecordBaseline();
+                    return true;
                 }
+                // process contains data, clear it
+                clearStructure(digitalDocument, logical);
             }
 
-            importRecord(digitalDocument, element);
+            importRecord(digitalDocument, rec, process.getImagesTifDirectory(false));
+            if (pipeline != null) {
+                recordContext.setFulltextDownload(pipeline.submit(() -> downloadFulltexts(recordContext, manifest)));
+            }
 
             // assign all pages to top element
-            assignPagesToUpperElement(logical);
+            assignPagesToUpperElement(logical, digitalDocument.getPhysicalDocStruct().getAllChildren());
 
             // save
             process.writeMetadataFile(fileformat);
             beanHelper.EigenschaftHinzufuegen(process, "Final Download URL", getDownloadUrl(identifier));
             ProcessManager.saveProcess(process);
+            // the downloaded records become the baseline of the next incremental migration only now
+            commitRecordBaseline();
 
         } catch (ReadException | PreferencesException | WriteException | IOException | SwapException | DAOException e) {
             // write error message to processlog
@@ -336,38 +496,171 @@ public class MigrateVisualLibraryToGoobiStepPlugin implements IStepPluginVersion
                     "Migration Plugin");
             return false;
         }
+        return true;
+    }
 
-        //  download images
-        boolean result = downloadImages();
+    /**
+     * second part of the migration: download the images and ALTO files of the record read in {@link #convert()}
+     *
+     * @return false if an image could not be downloaded
+     */
+    public boolean downloadMedia() {
+        long start = System.nanoTime();
+        try {
+            return downloadAllMedia();
+        } finally {
+            context.setDownloadNanos(System.nanoTime() - start);
+            MigrationMetrics.getInstance().addDownloadTime(context.getDownloadNanos());
+        }
+    }
+
+    private boolean downloadAllMedia() {
+        context.setIntegrityReport(new IntegrityReport());
 
-        // download alto files
-        downloadFulltexts();
+        boolean result;
+        try (DownloadManifest manifest = openManifest()) {
+            //  download images
+            result = downloadImages(context, context.getImageFiles(), manifest);
+
+            // download alto files
+            downloadFulltexts(context, manifest);
+        } catch (IOException | SwapException e) {
+            log.error("Error while opening the download manifest", e);
+            return false;
+        }
 
+        if (testResponse == null) {
+            writeIntegrityReport();
+        }
         return result;
     }
 
     /**
-     * assign the pages of all sub elements to the given element as well
+     * add the durations of the migration phases and the size of the media files to the journal
+     */
+    private void writeTimingSummary() {
+        IntegrityReport integrityReport = context.getIntegrityReport();
+        StringBuilder summary = new StringBuilder("Migration timing: METS download ").append(formatSeconds(context.getMetsFetchNanos()))
+                .append(", conversion ")
+                .append(formatSeconds(context.getConversionNanos()))
+                .append(", media download ")
+                .append(formatSeconds(context.getDownloadNanos()));
+        if (integrityReport != null) {
+            summary.append(" (")
+                    .append(integrityReport.getFileCount())
+                    .append(" files, ")
+                    .append(String.format(Locale.ROOT, "%.1f MB", integrityReport.getTotalSize() / (1024.0 * 1024.0)))
+                    .append(")");
+        }
+        Helper.addMessageToProcessJournal(process.getId(), LogType.INFO, summary.toString(), "Migration Plugin");
+    }
+
+    private static String formatSeconds(long nanos) {
+        return String.format(Locale.ROOT, "%.1f s", nanos / 1e9);
+    }
+
+    /**
+     * write the integrity report into the import folder and add a summary to the journal
+     */
+    private void writeIntegrityReport() {
+        IntegrityReport integrityReport = context.getIntegrityReport();
+        try {
+            integrityReport.write(Paths.get(process.getImportDirectory(), "integrity_report.txt"));
+        } catch (IOException | SwapException e) {
+            log.error("Error while writing the integrity report", e);
+        }
+        Map<IntegrityReport.Status, Integer> counts = integrityReport.getCounts();
+        if (counts.containsKey(IntegrityReport.Status.MISMATCH)) {
+            Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR,
+                    counts.get(IntegrityReport.Status.MISMATCH) + " media files do not match the checksum of the METS file.", "Migration Plugin");
+        }
+        Helper.addMessageToProcessJournal(process.getId(), LogType.DEBUG, "Media integrity: " + counts, "Migration Plugin");
+    }
+
+    /**
+     * remove all pages with their files and references and all sub elements of the logical element. The result is the same as removing the first
+     * file of each page with {@link ugh.dl.FileSet#removeFile(ContentFile)} and each reference with {@link DocStruct#removeReferenceTo(DocStruct)},
+     * but the file list and the reference lists are changed in one pass. UGH returns its own lists from getAllFiles(), getAllReferences() and
+     * getAllFromReferences(), not copies. Removing the elements one by one takes quadratic time for records with many pages.
      *
-     * @param in parent docstruct
+     * @param digitalDocument the document
+     * @param logical the logical element to clear, the anchor is kept
      */
-    private void assignPagesToUpperElement(DocStruct in) {
-        for (DocStruct child : in.getAllChildrenAsFlatList()) {
-            List<Reference> childRefs = child.getAllReferences("to");
-            for (Reference toAdd : childRefs) {
-                boolean existsAlready = false;
-                for (Reference ref : in.getAllReferences("to")) {
-                    if (ref.getTarget().equals(toAdd.getTarget())) {
-                        existsAlready = true;
-                        break;
-                    }
+    void clearStructure(DigitalDocument digitalDocument, DocStruct logical) {
+        DocStruct physical = digitalDocument.getPhysicalDocStruct();
+        List<DocStruct> pages = physical.getAllChildren();
+        if (pages != null && !pages.isEmpty()) {
+            Set<DocStruct> removedPages = Collections.newSetFromMap(new IdentityHashMap<>());
+            Set<ContentFile> removedFiles = Collections.newSetFromMap(new IdentityHashMap<>());
+            Set<DocStruct> sources = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (DocStruct page : pages) {
+                removedPages.add(page);
+                if (page.getAllContentFiles() != null && !page.getAllContentFiles().isEmpty()) {
+                    removedFiles.add(page.getAllContentFiles().get(0));
                 }
-                if (!existsAlready) {
-                    in.getAllReferences("to").add(toAdd);
+                for (Reference ref : page.getAllFromReferences()) {
+                    sources.add(ref.getSource());
+                }
+            }
+            digitalDocument.getFileSet().getAllFiles().removeIf(removedFiles::contains);
+            for (DocStruct source : sources) {
+                source.getAllReferences("to").removeIf(ref -> removedPages.contains(ref.getTarget()));
+            }
+            // removeReferenceTo() removes the reference from the target as well
+            for (DocStruct page : removedPages) {
+                page.getAllFromReferences().removeIf(ref -> sources.contains(ref.getSource()));
+            }
+        }
+        removeAllChildren(physical);
+        removeAllChildren(logical);
+    }
+
+    /**
+     * remove all children of a docstruct with {@link DocStruct#removeChild(DocStruct)}. The children are removed from the end of the list, so the
+     * remaining children are not moved for each removal.
+     */
+    private static void removeAllChildren(DocStruct docstruct) {
+        List<DocStruct> children = docstruct.getAllChildren();
+        if (children == null) {
+            return;
+        }
+        for (DocStruct child : new ArrayList<>(children).reversed()) {
+            docstruct.removeChild(child);
+        }
+    }
+
+    /**
+     * assign the pages of all sub elements to the given element as well. Pages are compared by identity, each page is assigned only once. The
+     * references of the element are sorted in physical order afterwards.
+     *
+     * @param in parent docstruct
+     * @param physicalPages all pages in physical order, can be null to keep the order of assignment
+     */
+    protected void assignPagesToUpperElement(DocStruct in, List<DocStruct> physicalPages) {
+        List<DocStruct> children = in.getAllChildrenAsFlatList();
+        if (children == null) {
+            return;
+        }
+        List<Reference> references = in.getAllReferences("to");
+        Set<DocStruct> assignedPages = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Reference ref : references) {
+            assignedPages.add(ref.getTarget());
+        }
+        for (DocStruct child : children) {
+            for (Reference toAdd : child.getAllReferences("to")) {
+                if (assignedPages.add(toAdd.getTarget())) {
+                    references.add(toAdd);
                 }
             }
         }
 
+        if (physicalPages != null && !physicalPages.isEmpty()) {
+            Map<DocStruct, Integer> pageOrder = new IdentityHashMap<>();
+            for (DocStruct page : physicalPages) {
+                pageOrder.put(page, pageOrder.size());
+            }
+            references.sort(Comparator.comparingInt(ref -> pageOrder.getOrDefault(ref.getTarget(), Integer.MAX_VALUE)));
+        }
     }
 
     /**
@@ -390,75 +683,113 @@ public class MigrateVisualLibraryToGoobiStepPlugin implements IStepPluginVersion
         }
     }
 
+    /**
+     * collect the images of the record and their file names. New lists are created, so a download of the previous list is not affected.
+     *
+     * @param rec the record
+     */
+    private void readImageFiles(MetsRecord rec) {
+        context.setMetsRecord(rec);
+        List<ImageName> files = new ArrayList<>();
+        Map<String, ImageName> index = new HashMap<>();
+        List<MetsFile> imageFileGroup = rec.getImageFileGroup();
+        if (imageFileGroup != null) {
+            for (MetsFile file : imageFileGroup) {
+                ImageName imageName = new ImageName(files.size() + 1, file.getId(), file.getUrl(), file.getMimeType(), getImageFileName(file));
+                files.add(imageName);
+                index.put(file.getId(), imageName);
+            }
+        }
+        context.setImageFiles(files);
+        context.setImageFileIndex(index);
+        context.setFulltextNames(getFulltextNames(rec));
+    }
+
+    /**
+     * get the name of an image in the media folder
+     *
+     * @param file the image file
+     * @return the file ID with an extension from the mime type
+     */
+    private static String getImageFileName(MetsFile file) {
+        String mimeType = file.getMimeType();
+        if (StringUtils.isNotBlank(mimeType)) {
+            // get extension from mimetype
+            return file.getId() + "." + mimeType.substring(mimeType.indexOf("/") + 1);
+        }
+        // use jpeg as default
+        return file.getId() + ".jpg";
+    }
+
+    /**
+     * name the ALTO files like the images of their pages
+     *
+     * @param rec the record
+     * @return ALTO file ID -> ID of the image of the same page
+     */
+    private static Map<String, String> getFulltextNames(MetsRecord rec) {
+        Map<String, String> names = new HashMap<>();
+        List<MetsFile> imageFileGroup = rec.getImageFileGroup();
+        if (rec.getPages() == null || imageFileGroup == null) {
+            return names;
+        }
+        Set<String> imageIds = new HashSet<>();
+        for (MetsFile file : imageFileGroup) {
+            imageIds.add(file.getId());
+        }
+        for (PhysicalDiv pageDiv : rec.getPages()) {
+            String imageId = null;
+            String altoId = null;
+            for (String fileid : pageDiv.getFileIds()) {
+                MetsFile file = rec.getFile(fileid);
+                if (imageIds.contains(fileid)) {
+                    imageId = fileid;
+                } else if (file != null && "FULLTEXT".equals(file.getUse())) {
+                    altoId = fileid;
+                }
+            }
+            if (altoId != null && imageId != null) {
+                names.put(altoId, imageId);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * get the name of an ALTO file in the ALTO folder
+     *
+     * @param file the ALTO file
+     * @param names the names of the ALTO files of the record
+     * @return the file name
+     */
+    private static String getFulltextFileName(MetsFile file, Map<String, String> names) {
+        return names.getOrDefault(file.getId(), file.getId().replace("ALTO", "IMG_MAX_")) + ".xml";
+    }
+
     /**
      * main import method
      * 
      * @param digitalDocument
      * @param rec
+     * @param imageFolder the image folder of the process, used for the pathimagefiles metadata
      */
-    private void importRecord(DigitalDocument digitalDocument, Element rec) {
-        imageFiles.clear();
+    void importRecord(DigitalDocument digitalDocument, MetsRecord rec, String imageFolder) {
+        Map<String, DocStruct> pageMap = context.getPageMap();
+        Map<String, DocStruct> docstructMap = context.getDocstructMap();
+        pageMap.clear();
+        docstructMap.clear();
+        readImageFiles(rec);
         DocStruct docstruct = digitalDocument.getLogicalDocStruct();
         if (docstruct.getType().isAnchor()) {
             docstruct = docstruct.getAllChildren().get(0);
         }
 
-        // get content of record
-        for (Element metsElement : rec.getChildren()) {
-            if ("dmdSec".equals(metsElement.getName())) {
-                dmdSecMap.put(metsElement.getAttributeValue("ID"), metsElement);
-            } else if ("amdSec".equals(metsElement.getName())) {
-                // do we need anything from mets:amdSec?
-            } else if ("fileSec".equals(metsElement.getName())) {
-                for (Element fileGroup : metsElement.getChildren()) {
-
-                    // get the fulltext filegroup
-                    if ("FULLTEXT".equals(fileGroup.getAttributeValue("USE"))) {
-                        altoFileGroup = fileGroup;
-                    }
-
-                    // get the images filegroup
-                    if ("MAX".equals(fileGroup.getAttributeValue("USE"))) {
-                        imageFileGroup = fileGroup;
-                    } else if ("DEFAULT".equals(fileGroup.getAttributeValue("USE")) && imageFileGroup == null) {
-                        imageFileGroup = fileGroup;
-                    }
-                }
-                if (imageFileGroup != null) {
-                    for (Element file : imageFileGroup.getChildren()) {
-                        Element flocat = file.getChild("FLocat", mets);
-                        String mimeType = file.getAttributeValue("MIMETYPE");
-                        String id = file.getAttributeValue("ID");
-                        String url = flocat.getAttributeValue("href", xlink);
-                        String filename;
-                        if (StringUtils.isNotBlank(mimeType)) {
-                            // get extension from mimetype
-                            filename = id + "." + mimeType.substring(mimeType.indexOf("/") + 1);
-                        } else {
-                            // use jpeg as default
-                            filename = id + ".jpg";
-                        }
-                        ImageName imageName = new ImageName(imageFiles.size() + 1, id, url, mimeType, filename);
-                        imageFiles.add(imageName);
-
-                    }
-                }
-
-            } else if ("structMap".equals(metsElement.getName()) && "LOGICAL".equals(metsElement.getAttributeValue("TYPE"))) {
-                logicalStructMap = metsElement;
-            } else if ("structMap".equals(metsElement.getName()) && "PHYSICAL".equals(metsElement.getAttributeValue("TYPE"))) {
-                physicalStructMap = metsElement;
-            } else if ("structLink".equals(metsElement.getName())) {
-                structLink = metsElement;
-            }
-        }
-
-        if (physicalStructMap == null) {
+        if (rec.getPages() == null) {
             // anchor or invalid record, abort
             return;
         }
 
-        // parse physical physicalStructMap
+        // parse physical structMap
         DocStruct physical = digitalDocument.getPhysicalDocStruct();
         if (physical == null) {
             try {
@@ -468,33 +799,28 @@ public class MigrateVisualLibraryToGoobiStepPlugin implements IStepPluginVersion
                 log.error(e);
             }
         }
-        MetadataType mdt = prefs.getMetadataTypeByName("pathimagefiles");
+        MetadataType mdt = rulesetMapping.getMetadataType("pathimagefiles");
         List<? extends ugh.dl.Metadata> alleImagepfade = physical.getAllMetadataByType(mdt);
         if (alleImagepfade == null || alleImagepfade.isEmpty()) {
             try {
                 Metadata newmd = new Metadata(mdt);
-                newmd.setValue("file://" + process.getImagesTifDirectory(false));
+                newmd.setValue("file://" + imageFolder);
                 physical.addMetadata(newmd);
-            } catch (MetadataTypeNotAllowedException | DocStructHasNoTypeException | IOException | SwapException e) {
+            } catch (MetadataTypeNotAllowedException | DocStructHasNoTypeException e) {
                 log.error(e);
             }
         }
 
-        Element physSequence = physicalStructMap.getChild("div", mets);
-
-        for (Element pageDiv : physSequence.getChildren("div", mets)) {
-            String contentIds = pageDiv.getAttributeValue("CONTENTIDS");
-            String id = pageDiv.getAttributeValue("ID");
-            String order = pageDiv.getAttributeValue("ORDER");
-            String orderLabel = pageDiv.getAttributeValue("ORDERLABEL");
+        for (PhysicalDiv pageDiv : rec.getPages()) {
+            String contentIds = pageDiv.getContentIds();
+            String id = pageDiv.getId();
+            String order = pageDiv.getOrder();
+            String orderLabel = pageDiv.getOrderLabel();
             String imageName = null;
-            for (Element fptr : pageDiv.getChildren("fptr", mets)) {
-                String fileid = fptr.getAttributeValue("FILEID");
-                for (ImageName in : imageFiles) {
-                    if (in.getId().equals(fileid)) {
-                        imageName = in.getName();
-                        break;
-                    }
+            for (String fileid : pageDiv.getFileIds()) {
+                ImageName in = context.getImageFileIndex().get(fileid);
+                if (in != null) {
+                    imageName = in.getName();
                 }
             }
             try {
@@ -523,22 +849,27 @@ public class MigrateVisualLibraryToGoobiStepPlugin implements IStepPluginVersion
         }
 
         // parse logical structMap
-        Element mainDiv = logicalStructMap.getChild("div", mets);
-        Element mptr = mainDiv.getChild("mptr", mets);
+        LogicalDiv mainDiv = rec.getLogicalRoot();
 
-        if (mptr != null) {
+        if (mainDiv.isMptr()) {
             // fix for visual library data
-            String divType = mainDiv.getAttributeValue("TYPE");
+            String divType = mainDiv.getType();
             if ("multivolume_work".equalsIgnoreCase(divType) || "periodical".equalsIgnoreCase(divType)) {
                 // multi volume document found, skip first element as it is handled in different file
-                mainDiv = mainDiv.getChild("div", mets);
+                mainDiv = mainDiv.getChildren().get(0);
             } else {
                 log.info("Found mptr for typ " + divType);
             }
         }
-        String id = mainDiv.getAttributeValue("ID");
-        String dmdid = mainDiv.getAttributeValue("DMDID");
-        String urn = mainDiv.getAttributeValue("CONTENTIDS");
+        // records with fewer sections than threads are converted sequentially
+        if (conversionThreads > 1 && rec.getDmdSecs().size() > conversionThreads) {
+            try (ForkJoinPool pool = new ForkJoinPool(conversionThreads)) {
+                pool.invoke(new ModsExtractionTask(List.of(mainDiv), rec, modsMapping, context.getModsValues()));
+            }
+        }
+        String id = mainDiv.getId();
+        String dmdid = mainDiv.getDmdId();
+        String urn = mainDiv.getContentIds();
         if (StringUtils.isNotBlank(urn)) {
             try {
                 Metadata md = new Metadata(urnType);
@@ -549,19 +880,18 @@ public class MigrateVisualLibraryToGoobiStepPlugin implements IStepPluginVersion
             }
         }
 
-        Element dmdSec = dmdSecMap.get(dmdid);
-        if (dmdSec != null) {
-            parseModsElement(dmdSec, docstruct);
+        if (StringUtils.isNotBlank(dmdid)) {
+            addModsMetadata(dmdid, docstruct);
         }
         docstructMap.put(id, docstruct);
-        for (Element subDiv : mainDiv.getChildren("div", mets)) {
+        for (LogicalDiv subDiv : mainDiv.getChildren()) {
             createDocstruct(subDiv, docstruct, digitalDocument);
         }
 
         // link pages to docstructs
-        for (Element smLink : structLink.getChildren()) {
-            String fromId = smLink.getAttributeValue("from", xlink);
-            String toId = smLink.getAttributeValue("to", xlink);
+        for (SmLink smLink : rec.getLinks()) {
+            String fromId = smLink.getFrom();
+            String toId = smLink.getTo();
 
             DocStruct logicalElement = docstructMap.get(fromId);
             DocStruct page = pageMap.get(toId);
@@ -573,266 +903,38 @@ public class MigrateVisualLibraryToGoobiStepPlugin implements IStepPluginVersion
                 log.debug("Ignore missing logical reference " + fromId);
             }
         }
+        // the maps are only needed while the structure is created
+        pageMap.clear();
+        docstructMap.clear();
+        context.getModsValues().clear();
     }
 
     /**
      * parse a MODS element to extract metadata from there
      *
-     * @param dmdSec
+     * @param modsElement
      * @param docstruct
      */
-    private void parseModsElement(Element dmdSec, DocStruct docstruct) {
-        Element modsElement = dmdSec.getChild("mdWrap", mets).getChild("xmlData", mets).getChild("mods", mods);
-
-        List<Element> classificationList = modsElement.getChildren("classification", mods);
-        for (Element classification : classificationList) {
-            addMetadata(classification, collectionType, docstruct);
-        }
-
-        List<Element> titleInfos = modsElement.getChildren("titleInfo", mods);
-        if (titleInfos != null) {
-            for (Element titleInfo : titleInfos) {
-                if ("alternative".equals(titleInfo.getAttributeValue("type"))) {
-                    // other title
-                    Element alternativeTitle = titleInfo.getChild("title", mods);
-                    addMetadata(alternativeTitle, otherTitleType, docstruct);
-                } else {
-                    // <mods:title>
-                    // TODO: nonSort 10704
-                    Element titleElement = titleInfo.getChild("title", mods);
-                    addMetadata(titleElement, titleType, docstruct);
-                    // <mods:subTitle>
-                    Element subTitle = titleInfo.getChild("subTitle", mods);
-                    addMetadata(subTitle, subTitleType, docstruct);
-
-                    // <mods:partNumber>
-                    Element partNumber = titleInfo.getChild("partNumber", mods);
-                    addMetadata(partNumber, partNumberType, docstruct);
-                    // <mods:partName>
-                    Element partName = titleInfo.getChild("partName", mods);
-                    addMetadata(partName, partNameType, docstruct);
-                }
-            }
-        }
-
-        List<Element> names = modsElement.getChildren("name", mods);
-        if (names != null) {
-            for (Element name : names) {
-                if ("personal".equals(name.getAttributeValue("type"))) {
-                    Person person = null;
-                    Element role = name.getChild("role", mods);
-                    String roleTerm = null;
-                    if (role != null) {
-                        Element roleTermElement = role.getChildren().get(0);
-                        roleTerm = roleTermElement.getText();
-                    }
-
-                    if (roleTerm == null) {
-                        roleTerm = "aut";
-                    }
-                    try {
-                        switch (roleTerm) {
-
-                            // Author
-                            case "aut":
-                                person = new Person(authorType);
-                                break;
-
-                            // Engraver
-                            case "egr":
-                                person = new Person(engraverType);
-                                break;
-
-                            // Honoree
-                            case "dte":
-                                person = new Person(honoreeType);
-                                break;
-
-                            // Editor
-                            case "edt":
-                                person = new Person(editorType);
-                                break;
-
-                            // OtherPerson
-                            default:
-                                person = new Person(otherPersonType);
-                        }
-
-                    } catch (MetadataTypeNotAllowedException e) {
-                        log.error(e);
-                    }
-                    String authority = name.getAttributeValue("authority");
-                    String authorityURI = name.getAttributeValue("authorityURI");
-                    String valueURI = name.getAttributeValue("valueURI");
-                    person.setAuthorityFile(authority, authorityURI, valueURI);
-
-                    List<Element> namePartList = name.getChildren("namePart", mods);
-                    String firstName = null;
-                    String lastName = null;
-                    if (namePartList != null && !namePartList.isEmpty()) {
-                        for (Element namePart : namePartList) {
-                            if ("family".equals(namePart.getAttributeValue("type"))) {
-                                lastName = namePart.getText();
-                            } else if ("given".equals(namePart.getAttributeValue("type"))) {
-                                firstName = namePart.getText();
-                            } else if (StringUtils.isEmpty(lastName)) {
-                                lastName = namePart.getText();
-                            }
-                        }
-                    } else {
-                        Element displayForm = name.getChild("displayForm", mods);
-                        String val = displayForm.getText();
-                        if (val.contains(",")) {
-                            String[] values = val.split(", ");
-                            firstName = values[1];
-                            lastName = values[0];
-                        } else {
-                            lastName = val;
-                        }
-                    }
-
-                    if (person != null) {
-                        person.setFirstname(firstName);
-                        person.setLastname(lastName);
-                        try {
-                            docstruct.addPerson(person);
-                        } catch (UGHException e) {
-                            log.error("Person of type '" + person.getType().getName() + "' cannot be added to structural element '"
-                                    + docstruct.getType().getName() + "'.", e);
-                        }
-                    }
-                }
-            }
-
-            List<Element> originInfoList = modsElement.getChildren("originInfo", mods);
-            if (originInfoList != null) {
-                for (Element originInfo : originInfoList) {
-                    if ("publication".equals(originInfo.getAttributeValue("eventType"))) {
-                        Element place = originInfo.getChild("place", mods);
-                        if (place != null) {
-                            addMetadata(place.getChild("placeTerm", mods), placeOfPublicationType, docstruct);
-                        }
-                        addMetadata(originInfo.getChild("publisher", mods), publisherNameType, docstruct);
-                        addMetadata(originInfo.getChild("dateIssued", mods), publicationYearType, docstruct);
-                    } else {
-                        Element place = originInfo.getChild("place", mods);
-                        if (place != null) {
-                            Element placeTerm = place.getChild("placeTerm", mods);
-                            addMetadata(placeTerm, placeOfElectronicOriginType, docstruct);
-                        }
-                        Element dateIssued = originInfo.getChild("dateIssued", mods);
-                        addMetadata(dateIssued, dateDigitizationType, docstruct);
-
-                        Element publisher = originInfo.getChild("publisher", mods);
-                        addMetadata(publisher, electronicPublisherType, docstruct);
-
-                        Element edition = originInfo.getChild("edition", mods);
-                        addMetadata(edition, electronicEditionType, docstruct);
-
-                    }
-                }
-
-                List<Element> languages = modsElement.getChildren("language", mods);
-                if (languages != null) {
-                    for (Element lang : languages) {
-                        addMetadata(lang.getChild("languageTerm", mods), languageType, docstruct);
-                    }
-                }
-
-                Element physicalDescription = modsElement.getChild("physicalDescription", mods);
-                if (physicalDescription != null) {
-
-                    addMetadata(physicalDescription.getChild("extent", mods), extentType, docstruct);
-                    for (Element note : physicalDescription.getChildren("note", mods)) {
-                        addMetadata(note, formatType, docstruct);
-                    }
-                }
-
-                List<Element> identifierList = modsElement.getChildren("identifier", mods);
-                if (identifierList != null) {
-                    for (Element identifier : identifierList) {
-                        if (StringUtils.isNotBlank(identifier.getAttributeValue("type"))) {
-                            switch (identifier.getAttributeValue("type")) {
-                                case "gbv":
-                                    // CatalogIDSource
-                                    addMetadata(identifier, sourceType, docstruct);
-                                    break;
-                                case "urn":
-                                    // URN
-                                    addMetadata(identifier, modsUrnType, docstruct);
-                                    break;
-                                case "hbz-idn":
-                                    // ???
-                                    break;
-                                case "purl":
-                                    addMetadata(identifier, purlType, docstruct);
-                                    break;
-                                default:
-                                    // ignore other identifier types
-                            }
-                        }
-                    }
-                }
-
-                Element location = modsElement.getChild("location", mods);
-                if (location != null) {
-                    // mods:location/mods:physicalLocation
-                    Element physicalLocation = location.getChild("physicalLocation", mods);
-                    addMetadata(physicalLocation, physicalLocationType, docstruct);
-
-                    // mods:location/mods:shelfLocator
-                    Element shelfLocator = location.getChild("shelfLocator", mods);
-                    addMetadata(shelfLocator, shelfLocatorType, docstruct);
-                }
-
-                List<Element> notesList = modsElement.getChildren("note", mods);
-                for (Element note : notesList) {
-                    if ("statement of responsibility".equals(note.getAttributeValue("type"))) {
-                        addMetadata(note, responsibilityType, docstruct);
-                    }
-                }
-
-                List<Element> relatedItems = modsElement.getChildren("relatedItem", mods);
-                for (Element relatedItem : relatedItems) {
-                    if ("series".equals(relatedItem.getAttributeValue("type"))) {
-                        Element relatedItemTitleInfo = relatedItem.getChild("titleInfo", mods);
-                        if (relatedItemTitleInfo != null) {
-                            addMetadata(relatedItemTitleInfo.getChild("title", mods), titleMainSeriesType, docstruct);
-                        }
-                        Element id = relatedItem.getChild("recordInfo", mods);
-                        if (id != null) {
-                            addMetadata(id.getChild("recordIdentifier", mods), catalogIDMainSeriesType, docstruct);
-                        }
-                        Element part = relatedItem.getChild("part", mods);
-                        if (part != null) {
-                            Element detail = part.getChild("detail", mods);
-                            Element number = detail.getChild("number", mods);
-                            addMetadata(number, seriesOrderType, docstruct);
-                        }
-                    }
-                }
-            }
-        }
+    void parseModsElement(Element modsElement, DocStruct docstruct) {
+        modsMapping.apply(modsElement, docstruct);
     }
 
     /**
-     * add new metadata based on given type and with the value from an XML-Element to existing docstruct
-     * 
-     * @param element
-     * @param type
-     * @param docstruct
+     * add the metadata of a dmdSec to a docstruct, sections that were not converted in parallel before are converted now
+     *
+     * @param dmdid the ID of the dmdSec
+     * @param docstruct the docstruct
      */
-    private void addMetadata(Element element, MetadataType type, DocStruct docstruct) {
-        if (element != null && type != null) {
-            try {
-                Metadata md = new Metadata(type);
-                md.setValue(element.getText());
-                docstruct.addMetadata(md);
-            } catch (UGHException e) {
-                log.debug("The metadata type '" + type.getName() + "'is not allowed inside of the docstruct '" + docstruct.getType().getName() + "'.",
-                        e);
+    private void addModsMetadata(String dmdid, DocStruct docstruct) {
+        ModsMapping.Values values = context.getModsValues().get(dmdid);
+        if (values == null) {
+            Element modsElement = context.getMetsRecord().getModsElement(dmdid);
+            if (modsElement == null) {
+                return;
             }
+            values = modsMapping.extract(modsElement);
         }
+        values.addTo(docstruct);
     }
 
     /**
@@ -842,19 +944,19 @@ public class MigrateVisualLibraryToGoobiStepPlugin implements IStepPluginVersion
      * @param parentDocstruct
      * @param digDoc
      */
-    private void createDocstruct(Element currentDiv, DocStruct parentDocstruct, DigitalDocument digDoc) {
-        String id = currentDiv.getAttributeValue("ID");
-        String dmdid = currentDiv.getAttributeValue("DMDID");
-        String docType = currentDiv.getAttributeValue("TYPE");
-        String contentids = currentDiv.getAttributeValue("CONTENTIDS");
-        String label = currentDiv.getAttributeValue("LABEL");
+    void createDocstruct(LogicalDiv currentDiv, DocStruct parentDocstruct, DigitalDocument digDoc) {
+        String id = currentDiv.getId();
+        String dmdid = currentDiv.getDmdId();
+        String docType = currentDiv.getType();
+        String contentids = currentDiv.getContentIds();
+        String label = currentDiv.getLabel();
         DocStruct docStruct = null;
 
         try {
             DocStructType dst = null;
             String prefsName = docStructRulesetNames.get(docType.toLowerCase());
             if (StringUtils.isNotBlank(prefsName)) {
-                dst = prefs.getDocStrctTypeByName(prefsName);
+                dst = rulesetMapping.getDocStructType(prefsName);
             }
             if (dst == null) {
 
@@ -894,12 +996,11 @@ public class MigrateVisualLibraryToGoobiStepPlugin implements IStepPluginVersion
             }
         }
 
-        docstructMap.put(id, docStruct);
+        context.getDocstructMap().put(id, docStruct);
         try {
             if (StringUtils.isNotBlank(dmdid)) {
                 // parse dmdSec
-                Element dmdSec = dmdSecMap.get(dmdid);
-                parseModsElement(dmdSec, docStruct);
+                addModsMetadata(dmdid, docStruct);
             } else if (StringUtils.isNotBlank(label)) {
                 Metadata metadataTitle = new Metadata(titleType);
                 metadataTitle.setValue(label);
@@ -915,67 +1016,98 @@ public class MigrateVisualLibraryToGoobiStepPlugin implements IStepPluginVersion
             log.error(e);
         }
 
-        for (Element subDiv : currentDiv.getChildren("div", mets)) {
+        for (LogicalDiv subDiv : currentDiv.getChildren()) {
             createDocstruct(subDiv, docStruct, digDoc);
         }
     }
 
     /**
-     * get the METS file from the OAI-Interface for a given identifier
+     * get the METS file from the OAI-Interface for a given identifier. The response is streamed into the import folder and parsed from there
+     * afterwards, so the document is never held completely in memory.
      *
      * @param identifier
      * @return
      * @throws SwapException
      * @throws IOException
      */
-    public Element getRecord(String identifier) throws IOException, SwapException {
+    public MetsRecord getRecord(String identifier) throws IOException, SwapException {
+        return getRecord(identifier, false);
+    }
+
+    /**
+     * get the METS file from the OAI-Interface for a given identifier. If the record cache is enabled, a cached copy is revalidated with a
+     * conditional request and anchor records are kept in memory.
+     *
+     * @param identifier
+     * @param anchor true if the record is the anchor record of the current process
+     * @return
+     * @throws SwapException
+     * @throws IOException
+     */
+    public MetsRecord getRecord(String identifier, boolean anchor) throws IOException, SwapException {
+        long start = System.nanoTime();
+        try {
+            return fetchRecord(identifier, anchor);
+        } finally {
+            context.addMetsFetchTime(System.nanoTime() - start);
+        }
+    }
+
+    private MetsRecord fetchRecord(String identifier, boolean anchor) throws IOException, SwapException {
 
         Helper.addMessageToProcessJournal(process.getId(), LogType.DEBUG, "Try to analyze METS file from: " + getDownloadUrl(identifier),
                 "Migration Plugin");
 
         if (StringUtils.isNotBlank(identifier)) {
             log.info("Get record for pid " + identifier);
-            Element oaiPmh = null;
 
             if (testResponse != null) {
                 // in case of a JUnit Test
-                oaiPmh = testResponse;
-            } else {
-                // in case of real live usage
-
-                // get METS-File from VL and store it inside of the import folder
-                String xmlDocument = HttpUtils.getStringFromUrl(getDownloadUrl(identifier));
-                FileUtils.write(new File(process.getImportDirectory(), "/oai_mets_" + identifier + ".xml"), xmlDocument, "UTF-8");
-
-                // parse METS-File now
-                Document document = XmlTools.readDocumentFromString(xmlDocument);
-                oaiPmh = document.getRootElement();
+                return MetsRecordReader.read(testResponse);
             }
+            // in case of real live usage
 
-            Element rec = null;
-            Element getRecord = oaiPmh.getChild("GetRecord", oaiNamespace);
-            if (getRecord != null) {
-                List<Element> elements = getRecord.getChildren();
-                for (Element element : elements) {
-                    if ("record".equals(element.getName())) {
-                        rec = element;
-                    } else if ("error".equals(element.getName())) {
-                        log.error(element.getText());
-
-                    }
-                }
+            // get METS-File from VL, it replaces the METS file of the last migration in the import folder once the process is saved
+            if (context.getRecordBaseline() == null) {
+                context.setRecordBaseline(new RecordBaseline(Paths.get(process.getImportDirectory())));
             }
-
-            if (rec != null) {
-                Element metadata = rec.getChild("metadata", oaiNamespace);
-                return metadata.getChild("mets", mets);
+            RecordBaseline baseline = context.getRecordBaseline();
+            Path metsFile = baseline.getDownloadFile(identifier);
+            String url = getDownloadUrl(identifier);
+            if (incremental) {
+                context.getPreviousRecords().put(identifier, baseline.readPrevious(identifier));
+            }
+            try {
+                if (recordCache != null) {
+                    return retryPolicy.execute("Download of record " + url, () -> recordCache.getRecord(url, metsFile, anchor));
+                }
+                retryPolicy.execute("Download of record " + url, () -> {
+                    HttpTransfer.download(url, metsFile, null);
+                    return null;
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Download of record " + identifier + " was interrupted", e);
             }
 
+            // parse METS-File now
+            return MetsRecordReader.read(metsFile);
         }
 
         return null;
     }
 
+    /**
+     * keep the downloaded records as METS files of the last successful migration
+     *
+     * @throws IOException
+     */
+    private void commitRecordBaseline() throws IOException {
+        if (context.getRecordBaseline() != null) {
+            context.getRecordBaseline().commit();
+        }
+    }
+
     /**
      * get CatalogIDDigital from given docstruct element
      *
@@ -1013,10 +1145,14 @@ public class MigrateVisualLibraryToGoobiStepPlugin implements IStepPluginVersion
     /**
      * download all images into the media folder
      *
+     * @param recordContext the context of the record
+     * @param imageFiles the images of the record
+     * @param manifest the download manifest of the process
      * @return
      */
-    private boolean downloadImages() {
-        if (imageFileGroup == null) {
+    private boolean downloadImages(ConversionContext recordContext, List<ImageName> imageFiles, DownloadManifest manifest) {
+        MetsRecord metsRecord = recordContext.getMetsRecord();
+        if (metsRecord == null || metsRecord.getImageFileGroup() == null) {
             // no file group found, abort
             return true;
         }
@@ -1035,55 +1171,16 @@ public class MigrateVisualLibraryToGoobiStepPlugin implements IStepPluginVersion
                 }
             } else {
                 // in case of real live usage
+                List<DownloadFile> files = new ArrayList<>(imageFiles.size());
                 for (ImageName imageFile : imageFiles) {
-                    String url = imageFile.getUrl();
-
-                    String filename = imageFile.getName();
-                    Path file = Paths.get(folder.toString(), filename);
-                    try (OutputStream out = Files.newOutputStream(file)) {
-                        RetryUtils.retry(new IOException("failed after retries"), Duration.ofSeconds(5l), 4,
-                                () -> HttpUtils.getStreamFromUrl(out, url));
-                    } catch (Exception e) {
-                        log.error("Error during image download from {}, after 5 retries", url);
-
-                    }
-                    // delete 0 byte files
-                    if (Files.isRegularFile(file) && Files.size(file) == 0) {
-
-                        //handle 403 permission denied in HAAB
-                        String id = imageFile.getId(); // -> FILE_0001_DEFAULT
-
-                        Element physSequence = physicalStructMap.getChild("div", mets);
-
-                        // check, if file was used in  structMap
-                        for (Element pageDiv : physSequence.getChildren("div", mets)) {
-                            for (Element fptr : pageDiv.getChildren("fptr", mets)) {
-                                String fileid = fptr.getAttributeValue("FILEID");
-                                if (id.equals(fileid)) {
-
-                                    // if it was used in the structMap, check if its linked to a logical element
-                                    String divId = pageDiv.getAttributeValue("ID"); // -> PHYS_0001
-                                    if (structLink != null) {
-                                        for (Element smLink : structLink.getChildren()) {
-                                            if (smLink.getAttributeValue("to", xlink).equals(divId)) {
-                                                // if this is the case, abort with an error. Otherwise skip this image, as it is not used
-                                                Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR, "Image download failed.",
-                                                        "Migration Plugin");
-                                                Files.delete(file);
-                                                return false;
-                                            }
-                                        }
-
-                                    }
-                                    break;
-                                }
-                            }
-
-                        }
-                        Files.delete(file);
-
-                    }
-
+                    MetsFile metsFile = metsRecord.getFile(imageFile.getId());
+                    files.add(new DownloadFile(imageFile.getId(), imageFile.getUrl(), Paths.get(folder.toString(), imageFile.getName()),
+                            metsFile == null ? null : metsFile.getChecksumType(), metsFile == null ? null : metsFile.getChecksum(),
+                            recordContext.isFileUnchanged(imageFile.getId())));
+                }
+                try (MediaDownloader downloader = createDownloader(downloadThreads, recordContext.getIntegrityReport())) {
+                    downloader.setManifest(manifest);
+                    return downloader.downloadAll(files, file -> handleFailedImage(metsRecord, file));
                 }
             }
         } catch (IOException | SwapException e) {
@@ -1093,13 +1190,71 @@ public class MigrateVisualLibraryToGoobiStepPlugin implements IStepPluginVersion
         return true;
     }
 
+    /**
+     * delete the images and ALTO files of the previous migration that are no longer contained in the record
+     *
+     * @param previous the record of the previous migration, can be null
+     * @param recordDiff the differences to the previous migration
+     */
+    private void deleteRemovedMedia(MetsRecord previous, MetsRecordDiff recordDiff) {
+        if (previous == null || recordDiff.getRemovedFiles().isEmpty() || testResponse != null) {
+            return;
+        }
+        Map<String, String> previousFulltextNames = getFulltextNames(previous);
+        List<MetsFile> previousImages = previous.getImageFileGroup() == null ? Collections.emptyList() : previous.getImageFileGroup();
+        try {
+            for (MetsFile file : recordDiff.getRemovedFiles()) {
+                Path target;
+                if (previousImages.contains(file)) {
+                    target = Paths.get(process.getImagesTifDirectory(false), getImageFileName(file));
+                } else if ("FULLTEXT".equals(file.getUse())) {
+                    target = Paths.get(process.getOcrAltoDirectory(), getFulltextFileName(file, previousFulltextNames));
+                    // the file may have been stored compressed
+                    Files.deleteIfExists(target.resolveSibling(target.getFileName() + ".gz"));
+                } else {
+                    continue;
+                }
+                log.debug("Delete {}, it was removed from the record", target);
+                Files.deleteIfExists(target);
+            }
+        } catch (IOException | SwapException e) {
+            log.error("Error while deleting removed media files", e);
+        }
+    }
+
+    /**
+     * handle an image that could not be downloaded or was downloaded with 0 bytes. The file gets deleted. If the image is linked to a logical
+     * element, the download fails
+     *
+     * @param metsRecord the record of the image
+     * @param file the failed file
+     * @return true, if the image is not used and can be skipped
+     */
+    private boolean handleFailedImage(MetsRecord metsRecord, DownloadFile file) {
+        //handle 403 permission denied in HAAB
+        boolean linked = metsRecord.isFileLinked(file.getId());
+        if (linked) {
+            // if this is the case, abort with an error. Otherwise skip this image, as it is not used
+            Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR, "Image download failed.", "Migration Plugin");
+        }
+        try {
+            Files.deleteIfExists(file.getTarget());
+            Files.deleteIfExists(HttpTransfer.getPartFile(file.getTarget()));
+        } catch (IOException e) {
+            log.error(e);
+        }
+        return !linked;
+    }
+
     /**
      * download all fulltext files into alto folder
      *
-     * @return
+     * @param recordContext the context of the record
+     * @param manifest the download manifest of the process
      */
-    private void downloadFulltexts() {
-        if (altoFileGroup == null) {
+    private void downloadFulltexts(ConversionContext recordContext, DownloadManifest manifest) {
+        MetsRecord metsRecord = recordContext.getMetsRecord();
+        if (metsRecord == null || metsRecord.getFulltextFileGroup() == null) {
             return;
         }
 
@@ -1110,38 +1265,79 @@ public class MigrateVisualLibraryToGoobiStepPlugin implements IStepPluginVersion
                 Files.createDirectories(folder);
             }
 
-            for (Element ele : altoFileGroup.getChildren()) {
-                Element flocat = ele.getChild("FLocat", mets);
-                String id = ele.getAttributeValue("ID");
-                String url = flocat.getAttributeValue("href", xlink).replace(" ", "");
-                String filename = id.replace("ALTO", "IMG_MAX_") + ".xml";
-
-                Path file = Paths.get(folder.toString(), filename);
-                try {
-                    OutputStream out = Files.newOutputStream(file);
-                    HttpUtils.getStreamFromUrl(out, url);
-                    out.close();
-                } catch (Exception e) {
-                    log.error("Error during image download from {}, retry in 5 sec", url);
-                    Thread.sleep(5000l);
-                    OutputStream out = Files.newOutputStream(Paths.get(folder.toString(), filename));
-                    HttpUtils.getStreamFromUrl(out, url);
-                    out.close();
+            List<DownloadFile> files = new ArrayList<>();
+            for (MetsFile ele : metsRecord.getFulltextFileGroup()) {
+                String id = ele.getId();
+                String url = ele.getUrl().replace(" ", "");
+                String filename = getFulltextFileName(ele, recordContext.getFulltextNames());
+                if (compressFulltexts) {
+                    filename += ".gz";
                 }
-                // delete 0 byte files
-                if (Files.isRegularFile(file) && Files.size(file) == 0) {
-                    Files.delete(file);
-                    Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR, "Fulltext download failed.",
-                            "Migration Plugin");
+                files.add(new DownloadFile(id, url, Paths.get(folder.toString(), filename), ele.getChecksumType(), ele.getChecksum(),
+                        recordContext.isFileUnchanged(id)));
+            }
 
+            if (testResponse != null) {
+                // in case of a JUnit Test
+                for (DownloadFile file : files) {
+                    Files.createFile(file.getTarget());
+                }
+            } else {
+                if (compressFulltexts && !files.isEmpty()) {
+                    Helper.addMessageToProcessJournal(process.getId(), LogType.INFO,
+                            "The ALTO files are stored gzip compressed for archival. They have to be unpacked before Goobi can display or edit them.",
+                            "Migration Plugin");
+                }
+                try (MediaDownloader downloader = createDownloader(fulltextThreads, recordContext.getIntegrityReport())) {
+                    downloader.setManifest(manifest);
+                    downloader.setCompress(compressFulltexts);
+                    downloader.downloadAll(files, this::handleFailedFulltext);
                 }
             }
 
-        } catch (IOException | InterruptedException | SwapException e) {
+        } catch (IOException | SwapException e) {
             log.error("Error while downloading the fulltext files", e);
         }
     }
 
+    /**
+     * delete a fulltext file that could not be downloaded or was downloaded with 0 bytes. Missing fulltexts don't abort the download
+     *
+     * @param file the failed file
+     * @return always true
+     */
+    private boolean handleFailedFulltext(DownloadFile file) {
+        try {
+            Files.deleteIfExists(file.getTarget());
+            Files.deleteIfExists(HttpTransfer.getPartFile(file.getTarget()));
+        } catch (IOException e) {
+            log.error(e);
+        }
+        Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR, "Fulltext download failed.", "Migration Plugin");
+        return true;
+    }
+
+    /**
+     * open the download manifest of the process, it is stored in the import folder. The images and the fulltexts share the same manifest.
+     *
+     * @return the manifest or null in case of a JUnit test
+     * @throws IOException
+     * @throws SwapException
+     */
+    private DownloadManifest openManifest() throws IOException, SwapException {
+        if (testResponse != null) {
+            return null;
+        }
+        return DownloadManifest.load(Paths.get(process.getImportDirectory(), "download_manifest.txt"));
+    }
+
+    private MediaDownloader createDownloader(int threads, IntegrityReport integrityReport) {
+        MediaDownloader downloader = new MediaDownloader(threads, useVirtualThreads);
+        downloader.setRetryPolicy(retryPolicy);
+        downloader.setIntegrityReport(integrityReport);
+        return downloader;
+    }
+
     @Override
     public HashMap<String, StepReturnValue> validate() {
         return null; //NOSONAR
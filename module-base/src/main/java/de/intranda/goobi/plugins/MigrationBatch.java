@@ -0,0 +1,210 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.goobi.beans.Process;
+import org.goobi.beans.Step;
+
+import de.sub.goobi.helper.CloseStepHelper;
+import de.sub.goobi.helper.enums.StepStatus;
+import de.sub.goobi.helper.exceptions.DAOException;
+import de.sub.goobi.persistence.managers.ProcessManager;
+import de.sub.goobi.persistence.managers.StepManager;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Migrates many processes in one pass, used by the GoobiScript {@link GoobiScriptMigrateVisualLibrary}. The ruleset of the processes is loaded
+ * only once, and the conversion of the metadata and the download of the media files run in separate thread pools, so the next records are
+ * converted while the media files of the previous ones are still downloaded.
+ *
+ * For each process, the step using the migration plugin is executed and closed afterwards. If the migration fails, the step is set to error.
+ */
+@Log4j2
+public class MigrationBatch implements AutoCloseable {
+
+    private final Supplier<? extends MigrateVisualLibraryToGoobiStepPlugin> pluginFactory;
+    private final ExecutorService conversionPool;
+    private final ExecutorService downloadPool;
+    // limits the number of converted records waiting for their download
+    private final Semaphore inProgress;
+
+    /**
+     * @param pluginFactory creates the plugin for each process, e.g. MigrateVisualLibraryToGoobiStepPlugin::new
+     * @param conversionThreads number of records converted in parallel
+     * @param downloadThreads number of records whose media files are downloaded in parallel, each record uses the download settings of the
+     *            plugin configuration
+     */
+    public MigrationBatch(Supplier<? extends MigrateVisualLibraryToGoobiStepPlugin> pluginFactory, int conversionThreads, int downloadThreads) {
+        this.pluginFactory = pluginFactory;
+        conversionPool = Executors.newFixedThreadPool(conversionThreads);
+        downloadPool = Executors.newFixedThreadPool(downloadThreads);
+        inProgress = new Semaphore(conversionThreads + downloadThreads);
+    }
+
+    /**
+     * migrate a list of processes and wait until all of them are finished
+     *
+     * @param processIds the ids of the processes
+     * @return process id -> true if the migration was successful
+     * @throws InterruptedException
+     */
+    public Map<Integer, Boolean> migrate(List<Integer> processIds) throws InterruptedException {
+        Map<Integer, CompletableFuture<Boolean>> futures = new LinkedHashMap<>();
+        for (Integer processId : processIds) {
+            futures.put(processId, submit(processId));
+        }
+
+        Map<Integer, Boolean> results = new LinkedHashMap<>();
+        for (Map.Entry<Integer, CompletableFuture<Boolean>> entry : futures.entrySet()) {
+            results.put(entry.getKey(), entry.getValue().join());
+        }
+        return results;
+    }
+
+    /**
+     * start the migration of a process. Blocks while too many records are converted or wait for their download.
+     *
+     * @param processId the id of the process
+     * @return completed with true if the migration was successful
+     * @throws InterruptedException
+     */
+    public CompletableFuture<Boolean> submit(Integer processId) throws InterruptedException {
+        inProgress.acquire();
+        return CompletableFuture.supplyAsync(() -> convert(processId), conversionPool)
+                .thenApplyAsync(this::download, downloadPool)
+                .whenComplete((result, e) -> inProgress.release());
+    }
+
+    /**
+     * convert the metadata of a process
+     *
+     * @return the plugin holding the converted record or null, if the conversion failed
+     */
+    private MigrateVisualLibraryToGoobiStepPlugin convert(Integer processId) {
+        Process process = getProcess(processId);
+        if (process == null) {
+            log.error("Process {} not found", processId);
+            return null;
+        }
+        MigrateVisualLibraryToGoobiStepPlugin plugin = pluginFactory.get();
+        Step step = findStep(process, plugin.getTitle());
+        if (step == null) {
+            log.error("Process {} has no step for plugin {}", processId, plugin.getTitle());
+            return null;
+        }
+        try {
+            // the ruleset is loaded only once for all processes, see RulesetMapping
+            plugin.initialize(step, getRulesetMapping(process));
+            if (plugin.convert()) {
+                return plugin;
+            }
+        } catch (RuntimeException e) {
+            log.error("Conversion of process {} failed", processId, e);
+        }
+        plugin.finishRecord();
+        setError(step);
+        return null;
+    }
+
+    /**
+     * download the media files of a converted process and close the step
+     */
+    private boolean download(MigrateVisualLibraryToGoobiStepPlugin plugin) {
+        if (plugin == null) {
+            return false;
+        }
+        boolean success;
+        try {
+            success = plugin.downloadMedia();
+        } catch (RuntimeException e) {
+            log.error("Download of the media files of process {} failed", plugin.getStep().getProzess().getId(), e);
+            success = false;
+        }
+        plugin.finishRecord();
+        if (!success) {
+            setError(plugin.getStep());
+            return false;
+        }
+        MigrationMetrics.getInstance().recordMigrated(true);
+        closeStep(plugin.getStep());
+        return true;
+    }
+
+    private static Step findStep(Process process, String pluginTitle) {
+        List<Step> steps = process.getSchritte() == null ? new ArrayList<>() : process.getSchritte();
+        for (Step step : steps) {
+            if (pluginTitle.equals(step.getStepPlugin())) {
+                return step;
+            }
+        }
+        return null;
+    }
+
+    private void setError(Step step) {
+        MigrationMetrics.getInstance().recordMigrated(false);
+        step.setBearbeitungsstatusEnum(StepStatus.ERROR);
+        saveStep(step);
+    }
+
+    // the following methods access the database, they are replaced in tests
+
+    Process getProcess(Integer processId) {
+        return ProcessManager.getProcessById(processId);
+    }
+
+    RulesetMapping getRulesetMapping(Process process) {
+        return RulesetMapping.load(process.getRegelsatz());
+    }
+
+    void closeStep(Step step) {
+        CloseStepHelper.closeStep(step, null);
+    }
+
+    void saveStep(Step step) {
+        try {
+            StepManager.saveStep(step);
+        } catch (DAOException e) {
+            log.error(e);
+        }
+    }
+
+    /**
+     * wait until all started migrations are finished
+     */
+    @Override
+    public void close() throws InterruptedException {
+        conversionPool.shutdown();
+        conversionPool.awaitTermination(1, TimeUnit.HOURS);
+        downloadPool.shutdown();
+        downloadPool.awaitTermination(1, TimeUnit.HOURS);
+    }
+}
@@ -0,0 +1,257 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Counters and latency histograms of all migrations of the application. The metrics are registered in the platform MBean server as
+ * {@value #OBJECT_NAME}, so they can be read with any JMX client or exporter.
+ */
+@Log4j2
+public class MigrationMetrics implements MigrationMetricsMXBean {
+
+    public static final String OBJECT_NAME = "de.intranda.goobi.plugins:type=MigrationMetrics,name=VisualLibrary";
+
+    // upper bounds of the latency buckets in milliseconds
+    private static final long[] BUCKETS = { 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000 };
+
+    private static final MigrationMetrics INSTANCE = new MigrationMetrics();
+
+    static {
+        register();
+    }
+
+    private final LongAdder recordsMigrated = new LongAdder();
+    private final LongAdder recordsFailed = new LongAdder();
+    private final LongAdder metsFetchNanos = new LongAdder();
+    private final LongAdder conversionNanos = new LongAdder();
+    private final LongAdder downloadNanos = new LongAdder();
+    private final LongAdder filesDownloaded = new LongAdder();
+    private final LongAdder filesFailed = new LongAdder();
+    private final LongAdder bytesDownloaded = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final Map<String, HostHistogram> hosts = new ConcurrentHashMap<>();
+
+    private MigrationMetrics() {
+    }
+
+    /**
+     * get the metrics of the application
+     *
+     * @return the metrics
+     */
+    public static MigrationMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    private static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            // a previous version of the plugin may still be registered
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(INSTANCE, name);
+        } catch (JMException | SecurityException e) {
+            log.warn("Cannot register the migration metrics", e);
+        }
+    }
+
+    public void recordMigrated(boolean success) {
+        (success ? recordsMigrated : recordsFailed).increment();
+    }
+
+    public void addMetsFetchTime(long nanos) {
+        metsFetchNanos.add(nanos);
+    }
+
+    public void addConversionTime(long nanos) {
+        conversionNanos.add(nanos);
+    }
+
+    public void addDownloadTime(long nanos) {
+        downloadNanos.add(nanos);
+    }
+
+    public void fileDownloaded(boolean success) {
+        (success ? filesDownloaded : filesFailed).increment();
+    }
+
+    public void addBytes(long bytes) {
+        bytesDownloaded.add(bytes);
+    }
+
+    public void retry() {
+        retries.increment();
+    }
+
+    /**
+     * record a request against a host
+     *
+     * @param host the host
+     * @param nanos time until the response headers were received
+     * @param failed true if the request failed or the server reported an error
+     */
+    public void request(String host, long nanos, boolean failed) {
+        if (host == null) {
+            return;
+        }
+        hosts.computeIfAbsent(host, h -> new HostHistogram()).record(Duration.ofNanos(nanos).toMillis(), failed);
+    }
+
+    @Override
+    public long getRecordsMigrated() {
+        return recordsMigrated.sum();
+    }
+
+    @Override
+    public long getRecordsFailed() {
+        return recordsFailed.sum();
+    }
+
+    @Override
+    public long getMetsFetchMillis() {
+        return Duration.ofNanos(metsFetchNanos.sum()).toMillis();
+    }
+
+    @Override
+    public long getConversionMillis() {
+        return Duration.ofNanos(conversionNanos.sum()).toMillis();
+    }
+
+    @Override
+    public long getDownloadMillis() {
+        return Duration.ofNanos(downloadNanos.sum()).toMillis();
+    }
+
+    @Override
+    public long getFilesDownloaded() {
+        return filesDownloaded.sum();
+    }
+
+    @Override
+    public long getFilesFailed() {
+        return filesFailed.sum();
+    }
+
+    @Override
+    public long getBytesDownloaded() {
+        return bytesDownloaded.sum();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public long[] getLatencyBucketsMillis() {
+        return BUCKETS.clone();
+    }
+
+    @Override
+    public Map<String, HostStatistics> getHosts() {
+        Map<String, HostStatistics> statistics = new TreeMap<>();
+        for (Map.Entry<String, HostHistogram> entry : hosts.entrySet()) {
+            statistics.put(entry.getKey(), entry.getValue().toStatistics());
+        }
+        return statistics;
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : new LongAdder[] { recordsMigrated, recordsFailed, metsFetchNanos, conversionNanos, downloadNanos, filesDownloaded,
+                filesFailed, bytesDownloaded, retries }) {
+            adder.reset();
+        }
+        hosts.clear();
+    }
+
+    /**
+     * latency histogram of a single host
+     */
+    private static class HostHistogram {
+        private final LongAdder[] buckets = new LongAdder[BUCKETS.length + 1];
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder totalMillis = new LongAdder();
+        private final LongAccumulator maxMillis = new LongAccumulator(Math::max, 0);
+
+        private HostHistogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        private void record(long millis, boolean failed) {
+            int bucket = 0;
+            while (bucket < BUCKETS.length && millis > BUCKETS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            totalMillis.add(millis);
+            maxMillis.accumulate(millis);
+            if (failed) {
+                failures.increment();
+            }
+        }
+
+        private HostStatistics toStatistics() {
+            long[] counts = new long[buckets.length];
+            long requests = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+                requests += counts[i];
+            }
+            long mean = requests == 0 ? 0 : totalMillis.sum() / requests;
+            return new HostStatistics(requests, failures.sum(), mean, getPercentile(counts, requests, 0.5), getPercentile(counts, requests, 0.95),
+                    maxMillis.get(), counts);
+        }
+
+        /**
+         * get the upper bound of the bucket containing the percentile, the maximum is used for the last bucket
+         */
+        private long getPercentile(long[] counts, long requests, double percentile) {
+            long rank = (long) Math.ceil(requests * percentile);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return i < BUCKETS.length ? Math.min(BUCKETS[i], maxMillis.get()) : maxMillis.get();
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+import java.util.Map;
+
+/**
+ * JMX interface of the migration metrics. All values are cumulated since the start of the application or the last reset.
+ */
+public interface MigrationMetricsMXBean {
+
+    long getRecordsMigrated();
+
+    long getRecordsFailed();
+
+    /** time spent downloading METS records in milliseconds */
+    long getMetsFetchMillis();
+
+    /** time spent converting records into the metadata of the processes in milliseconds, without the METS download */
+    long getConversionMillis();
+
+    /** time spent downloading media files in milliseconds */
+    long getDownloadMillis();
+
+    long getFilesDownloaded();
+
+    long getFilesFailed();
+
+    /** bytes received from the source repositories */
+    long getBytesDownloaded();
+
+    long getRetries();
+
+    /** upper bounds of the latency buckets of the hosts in milliseconds, the last bucket has no upper bound */
+    long[] getLatencyBucketsMillis();
+
+    /** request statistics per host */
+    Map<String, HostStatistics> getHosts();
+
+    void reset();
+}
@@ -0,0 +1,82 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jdom2.Element;
+
+import de.intranda.goobi.plugins.MetsRecord.LogicalDiv;
+import lombok.AllArgsConstructor;
+
+/**
+ * Converts the MODS sections of a logical structure in parallel. A task converts a list of sibling divs, long lists are split and the children
+ * of each div are converted in tasks of their own. The values are stored by DMDID, the structure is created from them in the order of the record
+ * afterwards.
+ */
+@AllArgsConstructor
+public class ModsExtractionTask extends RecursiveAction {
+
+    private static final long serialVersionUID = -3416020539786181924L;
+
+    // maximum number of sibling divs converted in a single task
+    private static final int BATCH_SIZE = 16;
+
+    private final transient List<LogicalDiv> divs;
+    private final transient MetsRecord rec;
+    private final transient ModsMapping mapping;
+    // DMDID -> converted section, must allow concurrent updates
+    private final transient Map<String, ModsMapping.Values> values;
+
+    @Override
+    protected void compute() {
+        if (divs.size() > BATCH_SIZE) {
+            int middle = divs.size() / 2;
+            invokeAll(new ModsExtractionTask(divs.subList(0, middle), rec, mapping, values),
+                    new ModsExtractionTask(divs.subList(middle, divs.size()), rec, mapping, values));
+            return;
+        }
+        // fork the subtrees first, so that other threads can take them while the divs of this task are converted
+        List<ModsExtractionTask> subtrees = new ArrayList<>();
+        for (LogicalDiv div : divs) {
+            if (!div.getChildren().isEmpty()) {
+                ModsExtractionTask subtree = new ModsExtractionTask(div.getChildren(), rec, mapping, values);
+                subtree.fork();
+                subtrees.add(subtree);
+            }
+        }
+        for (LogicalDiv div : divs) {
+            String dmdId = div.getDmdId();
+            if (StringUtils.isNotBlank(dmdId) && !values.containsKey(dmdId)) {
+                Element modsElement = rec.getModsElement(dmdId);
+                if (modsElement != null) {
+                    values.put(dmdId, mapping.extract(modsElement));
+                }
+            }
+        }
+        for (int i = subtrees.size() - 1; i >= 0; i--) {
+            subtrees.get(i).join();
+        }
+    }
+}
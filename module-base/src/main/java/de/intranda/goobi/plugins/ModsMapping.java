@@ -0,0 +1,422 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.DocStruct;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataType;
+import ugh.dl.Person;
+import ugh.exceptions.UGHException;
+
+/**
+ * Table driven conversion of MODS elements into metadata and persons of the ruleset.
+ *
+ * Each rule maps a path of MODS elements, relative to mods:mods, to a metadata type or to a person. A path consists of element names
+ * separated by <code>/</code>, each name can have conditions on attributes like <code>[@type='value']</code> or <code>[@type!='value']</code>,
+ * followed by <code>[1]</code> to use only the first matching element.
+ * The rules are compiled into a tree of element names, so that a mods:mods element is converted in a single walk over its elements, regardless
+ * of the number of rules.
+ *
+ * The conversion does not modify the mapping, so the same mapping can convert several elements at the same time. The values are extracted from
+ * the element first and added to the docstruct afterwards, only the second part has to run on the thread that creates the structure.
+ */
+@Log4j2
+public class ModsMapping {
+
+    private static final Namespace MODS = MigrateVisualLibraryToGoobiStepPlugin.mods;
+
+    private static final Pattern STEP_PATTERN = Pattern.compile("([\\w.-]+)((?:\\[@[\\w.-]+!?='[^']*'\\])*)(\\[1\\])?");
+    private static final Pattern CONDITION_PATTERN = Pattern.compile("\\[@([\\w.-]+)(!?)='([^']*)'\\]");
+
+    /** the mapping of the records of the visual library, used if the configuration does not contain a mapping */
+    public static final List<Rule> DEFAULT_RULES = List.of(
+            Rule.metadata("classification", "singleDigCollection"),
+            Rule.metadata("titleInfo[@type!='alternative']/title[1]", "TitleDocMain"),
+            Rule.metadata("titleInfo[@type!='alternative']/subTitle[1]", "TitleDocSub1"),
+            Rule.metadata("titleInfo[@type!='alternative']/partNumber[1]", "VolumeNumber"),
+            Rule.metadata("titleInfo[@type!='alternative']/partName[1]", "VolumeName"),
+            Rule.metadata("titleInfo[@type='alternative']/title[1]", "OtherTitle"),
+            Rule.person("name[@type='personal']", "OtherPerson", "aut",
+                    Map.of("aut", "Author", "egr", "Engraver", "dte", "Honoree", "edt", "Editor")),
+            Rule.metadata("originInfo[@eventType='publication']/place[1]/placeTerm[1]", "PlaceOfPublication"),
+            Rule.metadata("originInfo[@eventType='publication']/publisher[1]", "PublisherName"),
+            Rule.metadata("originInfo[@eventType='publication']/dateIssued[1]", "PublicationYear"),
+            Rule.metadata("originInfo[@eventType!='publication']/place[1]/placeTerm[1]", "_placeOfElectronicOrigin"),
+            Rule.metadata("originInfo[@eventType!='publication']/dateIssued[1]", "_dateDigitization"),
+            Rule.metadata("originInfo[@eventType!='publication']/publisher[1]", "_electronicPublisher"),
+            Rule.metadata("originInfo[@eventType!='publication']/edition[1]", "_electronicEdition"),
+            Rule.metadata("language/languageTerm[1]", "DocLanguage"),
+            Rule.metadata("physicalDescription[1]/extent[1]", "physicalDescriptionExtent"),
+            Rule.metadata("physicalDescription[1]/note", "FormatSourcePrint"),
+            Rule.metadata("identifier[@type='gbv']", "CatalogIDSource"),
+            Rule.metadata("identifier[@type='urn']", "URN"),
+            Rule.metadata("identifier[@type='purl']", "_purl"),
+            Rule.metadata("location[1]/physicalLocation[1]", "PhysicalLocation"),
+            Rule.metadata("location[1]/shelfLocator[1]", "shelfmarksource"),
+            Rule.metadata("note[@type='statement of responsibility']", "TitleDocMainResponsibility"),
+            Rule.metadata("relatedItem[@type='series']/titleInfo[1]/title[1]", "TitleMainSeries"),
+            Rule.metadata("relatedItem[@type='series']/recordInfo[1]/recordIdentifier[1]", "CatalogIDMainSeries"),
+            Rule.metadata("relatedItem[@type='series']/part[1]/detail[1]/number[1]", "SeriesOrder"));
+
+    private final Node root = new Node();
+
+    /**
+     * compile the rules, rules with an invalid path or a type that is not part of the ruleset are ignored
+     *
+     * @param rules the rules
+     * @param rulesetMapping the ruleset used to resolve the types
+     */
+    public ModsMapping(List<Rule> rules, RulesetMapping rulesetMapping) {
+        for (Rule rule : rules) {
+            Step step = getStep(rule.getPath());
+            if (step == null) {
+                log.error("Invalid MODS path {}, the rule is ignored", rule.getPath());
+            } else if (rule.getRoles() == null) {
+                MetadataType type = rulesetMapping.getMetadataType(rule.getType());
+                if (type == null) {
+                    log.debug("Metadata type {} is not part of the ruleset, ignore {}", rule.getType(), rule.getPath());
+                } else {
+                    step.metadataTypes.add(type);
+                }
+            } else {
+                Map<String, MetadataType> roleTypes = new HashMap<>();
+                for (Map.Entry<String, String> role : rule.getRoles().entrySet()) {
+                    MetadataType type = rulesetMapping.getMetadataType(role.getValue());
+                    if (type != null) {
+                        roleTypes.put(role.getKey(), type);
+                    }
+                }
+                step.persons.add(new PersonMapping(roleTypes, rulesetMapping.getMetadataType(rule.getType()), rule.getDefaultRole()));
+            }
+        }
+    }
+
+    /**
+     * get the last step of a path, missing steps are created
+     *
+     * @return the step or null, if the path is invalid
+     */
+    private Step getStep(String path) {
+        if (StringUtils.isBlank(path)) {
+            return null;
+        }
+        Node node = root;
+        Step step = null;
+        for (String part : path.trim().split("/(?=(?:[^']*'[^']*')*[^']*$)")) {
+            Matcher matcher = STEP_PATTERN.matcher(part.trim());
+            if (!matcher.matches()) {
+                return null;
+            }
+            String conditions = matcher.group(2) + StringUtils.defaultString(matcher.group(3));
+            List<Step> steps = node.steps.computeIfAbsent(matcher.group(1), n -> new ArrayList<>());
+            step = null;
+            // rules with the same conditions share their steps
+            for (Step existing : steps) {
+                if (existing.conditions.equals(conditions)) {
+                    step = existing;
+                }
+            }
+            if (step == null) {
+                step = new Step(conditions);
+                steps.add(step);
+            }
+            node = step.children;
+        }
+        return step;
+    }
+
+    /**
+     * add the metadata and persons of a MODS element to a docstruct
+     *
+     * @param modsElement the mods:mods element
+     * @param docstruct the docstruct
+     */
+    public void apply(Element modsElement, DocStruct docstruct) {
+        extract(modsElement).addTo(docstruct);
+    }
+
+    /**
+     * convert a MODS element without adding the values to a docstruct
+     *
+     * @param modsElement the mods:mods element
+     * @return the metadata and persons in the order of the element
+     */
+    public Values extract(Element modsElement) {
+        Values values = new Values();
+        visit(modsElement, root, values);
+        return values;
+    }
+
+    private void visit(Element parent, Node node, Values values) {
+        // steps restricted to the first element that were already used
+        List<Step> used = null;
+        for (Element element : parent.getChildren()) {
+            List<Step> steps = node.steps.get(element.getName());
+            if (steps == null || !MODS.equals(element.getNamespace())) {
+                continue;
+            }
+            for (Step step : steps) {
+                if (!step.matches(element)) {
+                    continue;
+                }
+                if (step.first) {
+                    if (used == null) {
+                        used = new ArrayList<>();
+                    } else if (used.contains(step)) {
+                        continue;
+                    }
+                    used.add(step);
+                }
+                for (MetadataType type : step.metadataTypes) {
+                    values.values.add(new MetadataValue(type, element.getText()));
+                }
+                for (PersonMapping person : step.persons) {
+                    PersonValue value = createPerson(element, person);
+                    if (value != null) {
+                        values.values.add(value);
+                    }
+                }
+                if (!step.children.steps.isEmpty()) {
+                    visit(element, step.children, values);
+                }
+            }
+        }
+    }
+
+    /**
+     * create a person from a mods:name element
+     *
+     * @return the person or null, if the role is not mapped or the element contains no name
+     */
+    private static PersonValue createPerson(Element name, PersonMapping mapping) {
+        String roleTerm = mapping.defaultRole;
+        Element role = name.getChild("role", MODS);
+        if (role != null && !role.getChildren().isEmpty()) {
+            roleTerm = role.getChildren().get(0).getText();
+        }
+        MetadataType type = mapping.roleTypes.getOrDefault(roleTerm, mapping.otherType);
+        if (type == null) {
+            return null;
+        }
+
+        String firstName = null;
+        String lastName = null;
+        List<Element> namePartList = name.getChildren("namePart", MODS);
+        if (!namePartList.isEmpty()) {
+            for (Element namePart : namePartList) {
+                if ("family".equals(namePart.getAttributeValue("type"))) {
+                    lastName = namePart.getText();
+                } else if ("given".equals(namePart.getAttributeValue("type"))) {
+                    firstName = namePart.getText();
+                } else if (StringUtils.isEmpty(lastName)) {
+                    lastName = namePart.getText();
+                }
+            }
+        } else {
+            String val = name.getChildText("displayForm", MODS);
+            if (val == null) {
+                return null;
+            }
+            if (val.contains(",")) {
+                String[] values = val.split(", ");
+                firstName = values[1];
+                lastName = values[0];
+            } else {
+                lastName = val;
+            }
+        }
+
+        return new PersonValue(type, name.getAttributeValue("authority"), name.getAttributeValue("authorityURI"), name.getAttributeValue("valueURI"),
+                firstName, lastName);
+    }
+
+    /**
+     * the converted metadata and persons of a MODS element
+     */
+    public static class Values {
+        private final List<Value> values = new ArrayList<>();
+
+        /**
+         * add the metadata and persons to a docstruct, values that are not allowed in the docstruct are skipped
+         *
+         * @param docstruct the docstruct
+         */
+        public void addTo(DocStruct docstruct) {
+            for (Value value : values) {
+                value.addTo(docstruct);
+            }
+        }
+    }
+
+    private interface Value {
+        void addTo(DocStruct docstruct);
+    }
+
+    @AllArgsConstructor
+    private static class MetadataValue implements Value {
+        private final MetadataType type;
+        private final String value;
+
+        @Override
+        public void addTo(DocStruct docstruct) {
+            try {
+                Metadata md = new Metadata(type);
+                md.setValue(value);
+                docstruct.addMetadata(md);
+            } catch (UGHException e) {
+                log.debug("The metadata type '" + type.getName() + "'is not allowed inside of the docstruct '" + docstruct.getType().getName() + "'.",
+                        e);
+            }
+        }
+    }
+
+    @AllArgsConstructor
+    private static class PersonValue implements Value {
+        private final MetadataType type;
+        private final String authority;
+        private final String authorityUri;
+        private final String valueUri;
+        private final String firstName;
+        private final String lastName;
+
+        @Override
+        public void addTo(DocStruct docstruct) {
+            try {
+                Person person = new Person(type);
+                person.setAuthorityFile(authority, authorityUri, valueUri);
+                person.setFirstname(firstName);
+                person.setLastname(lastName);
+                docstruct.addPerson(person);
+            } catch (UGHException e) {
+                log.error("Person of type '" + type.getName() + "' cannot be added to structural element '" + docstruct.getType().getName() + "'.", e);
+            }
+        }
+    }
+
+    /**
+     * a configured mapping of a MODS path
+     */
+    @Getter
+    @EqualsAndHashCode
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class Rule {
+        private final String path;
+        // metadata type, or the person type of unknown roles
+        private final String type;
+        // role code -> person type, null for metadata
+        private final Map<String, String> roles;
+        // role used if the name does not contain a role
+        private final String defaultRole;
+
+        /**
+         * map the text of the matched elements to a metadata type
+         *
+         * @param path the MODS path
+         * @param type internal name of the metadata type
+         * @return the rule
+         */
+        public static Rule metadata(String path, String type) {
+            return new Rule(path, type, null, null);
+        }
+
+        /**
+         * convert the matched mods:name elements into persons
+         *
+         * @param path the MODS path
+         * @param otherType internal name of the person type used for roles without a mapping
+         * @param defaultRole role code used if the name does not contain a role
+         * @param roles role code -> internal name of the person type
+         * @return the rule
+         */
+        public static Rule person(String path, String otherType, String defaultRole, Map<String, String> roles) {
+            return new Rule(path, otherType, Collections.unmodifiableMap(new LinkedHashMap<>(roles)), defaultRole);
+        }
+    }
+
+    /**
+     * element name -> possible steps for elements of this name
+     */
+    private static class Node {
+        private final Map<String, List<Step>> steps = new HashMap<>();
+    }
+
+    private static class Step {
+        // conditions as written in the path, used to share steps between rules
+        private final String conditions;
+        private final List<Condition> attributes = new ArrayList<>();
+        // use only the first matching element
+        private final boolean first;
+        private final List<MetadataType> metadataTypes = new ArrayList<>();
+        private final List<PersonMapping> persons = new ArrayList<>();
+        private final Node children = new Node();
+
+        private Step(String conditions) {
+            this.conditions = conditions;
+            this.first = conditions.endsWith("[1]");
+            Matcher matcher = CONDITION_PATTERN.matcher(conditions);
+            while (matcher.find()) {
+                attributes.add(new Condition(matcher.group(1), "!".equals(matcher.group(2)), matcher.group(3)));
+            }
+        }
+
+        private boolean matches(Element element) {
+            for (Condition condition : attributes) {
+                // a missing attribute is different from any value
+                boolean equal = condition.value.equals(element.getAttributeValue(condition.attribute));
+                if (equal == condition.negated) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Condition {
+        private final String attribute;
+        private final boolean negated;
+        private final String value;
+    }
+
+    @AllArgsConstructor
+    private static class PersonMapping {
+        private final Map<String, MetadataType> roleTypes;
+        private final MetadataType otherType;
+        private final String defaultRole;
+    }
+}
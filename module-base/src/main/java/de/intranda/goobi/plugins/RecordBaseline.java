@@ -0,0 +1,115 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * The METS files of the last successful migration, stored in the import folder of a process. The incremental mode compares new records with
+ * them. New records are downloaded into temporary files next to them and replace them only after the process was saved, so the next run after
+ * a failed migration is compared with the last successful one again.
+ */
+@Log4j2
+public class RecordBaseline {
+
+    private final Path folder;
+    // downloaded file -> METS file of the last successful migration
+    private final Map<Path, Path> downloads = new LinkedHashMap<>();
+
+    /**
+     * @param folder the import folder of the process
+     */
+    public RecordBaseline(Path folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * read the METS file of the last successful migration
+     *
+     * @param identifier the identifier of the record
+     * @return the record or null, if the file does not exist or cannot be read
+     */
+    public MetsRecord readPrevious(String identifier) {
+        Path metsFile = getMetsFile(identifier);
+        if (!Files.isRegularFile(metsFile)) {
+            return null;
+        }
+        try {
+            return MetsRecordReader.read(metsFile);
+        } catch (IOException e) {
+            log.warn("Cannot read the previous METS file {}, the record is migrated completely", metsFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * get the file a new record is downloaded to, it replaces the METS file of the last migration in {@link #commit()}
+     *
+     * @param identifier the identifier of the record
+     * @return the temporary file
+     * @throws IOException
+     */
+    public Path getDownloadFile(String identifier) throws IOException {
+        Files.createDirectories(folder);
+        Path metsFile = getMetsFile(identifier);
+        Path downloadFile = metsFile.resolveSibling(metsFile.getFileName() + ".tmp");
+        downloads.put(downloadFile, metsFile);
+        return downloadFile;
+    }
+
+    /**
+     * replace the METS files of the last migration with the downloaded records, called after the process was saved
+     *
+     * @throws IOException
+     */
+    public void commit() throws IOException {
+        for (Map.Entry<Path, Path> download : downloads.entrySet()) {
+            if (Files.isRegularFile(download.getKey())) {
+                Files.move(download.getKey(), download.getValue(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        downloads.clear();
+    }
+
+    /**
+     * delete the downloaded records of a failed migration, the METS files of the last migration are kept
+     */
+    public void discard() {
+        for (Path downloadFile : downloads.keySet()) {
+            try {
+                Files.deleteIfExists(downloadFile);
+            } catch (IOException e) {
+                log.warn("Cannot delete {}", downloadFile, e);
+            }
+        }
+        downloads.clear();
+    }
+
+    private Path getMetsFile(String identifier) {
+        return folder.resolve("oai_mets_" + identifier + ".xml");
+    }
+}
@@ -0,0 +1,259 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * On-disk cache for METS records, keyed by the download url. Cached records are revalidated with conditional requests, so unchanged records are
+ * not transferred again. Anchor records can additionally be kept in memory, they are shared by all processes of the same periodical or multi
+ * volume work. Files that were not used for the configured number of days are deleted.
+ */
+@Log4j2
+public class RecordCache {
+
+    // minimum time between two cleanups of the same folder
+    private static final long CLEANUP_INTERVAL_MILLIS = 60 * 60 * 1000l;
+
+    // cache folder and number of anchor records -> download url -> parsed anchor record, shared by all plugin instances with the same
+    // configuration, so that a project cannot change the limit of another one
+    private static final Map<String, Map<String, CachedRecord>> ANCHOR_RECORDS = new ConcurrentHashMap<>();
+    // cache folder -> time of the last cleanup
+    private static final Map<Path, Long> LAST_CLEANUP = new ConcurrentHashMap<>();
+
+    private final Path folder;
+    private final long anchorMaxAgeMillis;
+    private final Map<String, CachedRecord> anchorRecords;
+
+    /**
+     * @param folder the cache folder
+     * @param anchorRecords number of anchor records kept in memory
+     * @param anchorMaxAgeSeconds time in seconds an anchor record in memory is used without revalidation
+     * @param maxAgeDays number of days after which unused records are deleted, 0 to keep them
+     */
+    public RecordCache(Path folder, int anchorRecords, int anchorMaxAgeSeconds, int maxAgeDays) {
+        this.folder = folder;
+        this.anchorMaxAgeMillis = anchorMaxAgeSeconds * 1000l;
+        this.anchorRecords = ANCHOR_RECORDS.computeIfAbsent(folder.toAbsolutePath() + "|" + anchorRecords, k -> createAnchorStore(anchorRecords));
+        if (maxAgeDays > 0) {
+            cleanup(maxAgeDays * 24 * 60 * 60 * 1000l);
+        }
+    }
+
+    private static Map<String, CachedRecord> createAnchorStore(int maxRecords) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = -2000915950427290367L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedRecord> eldest) {
+                return size() > maxRecords;
+            }
+        };
+    }
+
+    /**
+     * delete the files that were not used within the maximum age, at most once per hour for each folder
+     */
+    private void cleanup(long maxAgeMillis) {
+        long now = System.currentTimeMillis();
+        Long last = LAST_CLEANUP.get(folder);
+        if ((last != null && now - last < CLEANUP_INTERVAL_MILLIS) || !Files.isDirectory(folder)) {
+            return;
+        }
+        LAST_CLEANUP.put(folder, now);
+        try (Stream<Path> files = Files.list(folder)) {
+            files.filter(f -> isOlderThan(f, now - maxAgeMillis)).forEach(f -> {
+                try {
+                    Files.deleteIfExists(f);
+                } catch (IOException e) {
+                    log.warn("Cannot delete {} from the record cache", f, e);
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Cannot clean up the record cache {}", folder, e);
+        }
+    }
+
+    private static boolean isOlderThan(Path file, long timestamp) {
+        Path usedFile = file;
+        String name = file.getFileName().toString();
+        if (name.endsWith(".properties")) {
+            // the validators are kept as long as their record
+            Path cacheFile = file.resolveSibling(name.substring(0, name.length() - ".properties".length()) + ".xml");
+            if (Files.isRegularFile(cacheFile)) {
+                usedFile = cacheFile;
+            }
+        }
+        try {
+            return Files.isRegularFile(usedFile) && Files.getLastModifiedTime(usedFile).toMillis() < timestamp;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * get a record, either from the cache or from the server
+     *
+     * @param url the download url
+     * @param target the file the METS document is copied to
+     * @param anchor true if the record is an anchor record, it is kept in memory in this case
+     * @return the record or null, if the response does not contain a METS document
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public MetsRecord getRecord(String url, Path target, boolean anchor) throws IOException, InterruptedException {
+        String key = getKey(url);
+        Path cacheFile = folder.resolve(key + ".xml");
+
+        if (anchor) {
+            CachedRecord cached;
+            synchronized (anchorRecords) {
+                cached = anchorRecords.get(url);
+            }
+            if (cached != null && System.currentTimeMillis() - cached.loadTime < anchorMaxAgeMillis && Files.isRegularFile(cacheFile)) {
+                log.debug("Use anchor record {} from memory", url);
+                Files.copy(cacheFile, target, StandardCopyOption.REPLACE_EXISTING);
+                touch(cacheFile);
+                return cached.rec;
+            }
+        }
+
+        Files.createDirectories(folder);
+        Path validatorFile = folder.resolve(key + ".properties");
+        Map<String, String> headers = new HashMap<>();
+        if (Files.isRegularFile(cacheFile) && Files.isRegularFile(validatorFile)) {
+            Properties validators = new Properties();
+            try (InputStream in = Files.newInputStream(validatorFile)) {
+                validators.load(in);
+            }
+            if (validators.getProperty("etag") != null) {
+                headers.put("If-None-Match", validators.getProperty("etag"));
+            }
+            if (validators.getProperty("lastModified") != null) {
+                headers.put("If-Modified-Since", validators.getProperty("lastModified"));
+            }
+        }
+
+        boolean stored = HttpTransfer.get(url, headers, response -> store(response, url, key, cacheFile, validatorFile));
+        if (!stored) {
+            // not modified, but the cached file was deleted in the meantime
+            log.debug("Cached file of {} is missing, request the record again", url);
+            if (!HttpTransfer.get(url, Map.of(), response -> store(response, url, key, cacheFile, validatorFile))) {
+                throw new IOException("Download of " + url + " failed, the server answered 304 to a request without validators");
+            }
+        }
+
+        Files.createDirectories(target.getParent());
+        Files.copy(cacheFile, target, StandardCopyOption.REPLACE_EXISTING);
+        MetsRecord rec = MetsRecordReader.read(cacheFile);
+        if (anchor && rec != null) {
+            synchronized (anchorRecords) {
+                anchorRecords.put(url, new CachedRecord(rec, System.currentTimeMillis()));
+            }
+        }
+        return rec;
+    }
+
+    /**
+     * store the response in the cache
+     *
+     * @return false, if the record was not modified but the cached file does not exist anymore
+     */
+    private boolean store(HttpResponse<InputStream> response, String url, String key, Path cacheFile, Path validatorFile) throws IOException {
+        try (InputStream body = response.body()) {
+            int status = response.statusCode();
+            if (status == 304) {
+                if (!Files.isRegularFile(cacheFile)) {
+                    return false;
+                }
+                log.debug("Record {} was not modified, use cached file", url);
+                touch(cacheFile);
+            } else if (status >= 400) {
+                HttpTransfer.checkRetryableStatus(response, url);
+                throw new IOException("Download of " + url + " failed with status " + status);
+            } else {
+                // write into a temporary file first, other processes may read the cached file at the same time
+                Path tempFile = Files.createTempFile(folder, key, ".tmp");
+                try (OutputStream out = Files.newOutputStream(tempFile)) {
+                    MigrationMetrics.getInstance().addBytes(body.transferTo(out));
+                }
+                Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                Properties validators = new Properties();
+                validators.setProperty("url", url);
+                response.headers().firstValue("ETag").ifPresent(v -> validators.setProperty("etag", v));
+                response.headers().firstValue("Last-Modified").ifPresent(v -> validators.setProperty("lastModified", v));
+                Path tempValidatorFile = Files.createTempFile(folder, key, ".tmp");
+                try (OutputStream out = Files.newOutputStream(tempValidatorFile)) {
+                    validators.store(out, null);
+                }
+                Files.move(tempValidatorFile, validatorFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * mark a cached file as used, so it is not deleted by the cleanup
+     */
+    private static void touch(Path cacheFile) {
+        try {
+            Files.setLastModifiedTime(cacheFile, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            log.debug("Cannot update the modification time of {}", cacheFile, e);
+        }
+    }
+
+    private static String getKey(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(url.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is available in every java runtime
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @AllArgsConstructor
+    private static class CachedRecord {
+        private MetsRecord rec;
+        private long loadTime;
+    }
+}
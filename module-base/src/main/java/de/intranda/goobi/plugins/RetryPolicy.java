@@ -0,0 +1,107 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import de.intranda.goobi.plugins.HttpTransfer.HostUnavailableException;
+import de.intranda.goobi.plugins.HttpTransfer.RetryableStatusException;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Retries failed transfers with an exponentially growing delay. A random jitter spreads the retries of parallel downloads. If the server sent
+ * a Retry-After header, the delay is at least as long as requested. Requests to a host marked as unavailable by its circuit breaker are not
+ * retried.
+ */
+@Log4j2
+@Getter
+public class RetryPolicy {
+
+    private final int retries;
+    private final Duration initialDelay;
+    private final Duration maxDelay;
+
+    /**
+     * @param retries number of retries after the first attempt
+     * @param initialDelay delay before the first retry, doubled for each further retry
+     * @param maxDelay upper limit for a single delay, also for the value of a Retry-After header
+     */
+    public RetryPolicy(int retries, Duration initialDelay, Duration maxDelay) {
+        this.retries = retries;
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * run an action until it succeeds or all retries failed
+     *
+     * @param description used in the log messages
+     * @param action the action to run
+     * @return the result of the action
+     * @throws IOException the error of the last attempt
+     * @throws InterruptedException
+     */
+    public <T> T execute(String description, Action<T> action) throws IOException, InterruptedException {
+        for (int attempt = 0;; attempt++) {
+            try {
+                return action.run();
+            } catch (HostUnavailableException e) {
+                throw e;
+            } catch (IOException e) {
+                if (attempt >= retries) {
+                    throw e;
+                }
+                Duration delay = getDelay(attempt, e);
+                MigrationMetrics.getInstance().retry();
+                log.warn("{} failed ({}), retry in {} ms", description, e.getMessage(), delay.toMillis());
+                Thread.sleep(delay.toMillis());
+            }
+        }
+    }
+
+    /**
+     * get the delay before the next attempt
+     *
+     * @param attempt the number of the failed attempt, starting with 0
+     * @param error the error of the failed attempt
+     * @return the delay
+     */
+    Duration getDelay(int attempt, IOException error) {
+        long max = initialDelay.toMillis() << Math.min(attempt, 30);
+        if (max <= 0 || max > maxDelay.toMillis()) {
+            max = maxDelay.toMillis();
+        }
+        // wait at least half of the exponential delay
+        long delay = max / 2 + ThreadLocalRandom.current().nextLong(max / 2 + 1);
+        if (error instanceof RetryableStatusException statusException && statusException.getRetryAfter() != null) {
+            delay = Math.max(delay, Math.min(statusException.getRetryAfter().toMillis(), maxDelay.toMillis()));
+        }
+        return Duration.ofMillis(delay);
+    }
+
+    @FunctionalInterface
+    public interface Action<T> {
+        T run() throws IOException, InterruptedException;
+    }
+}
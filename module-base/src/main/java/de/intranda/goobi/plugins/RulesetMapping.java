@@ -0,0 +1,160 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.goobi.beans.Ruleset;
+import org.jdom2.Document;
+import org.jdom2.Element;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.XmlTools;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.DocStructType;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+
+/**
+ * The parts of a ruleset needed for the conversion. A mapping can be shared by all processes using the same ruleset, it is not modified after
+ * it was created, except for the lookup cache of the types and the compiled MODS mappings.
+ *
+ * Loaded mappings are cached for the whole application, keyed by the ruleset file. A cached mapping is replaced when the modification time of
+ * the file changes.
+ */
+@Log4j2
+@Getter
+public class RulesetMapping {
+
+    // ruleset file -> last loaded mapping
+    private static final Map<Path, RulesetMapping> CACHE = new ConcurrentHashMap<>();
+
+    private final Prefs prefs;
+
+    // METS type in lower case -> internal name of the docstruct type
+    private final Map<String, String> docStructRulesetNames = new HashMap<>();
+
+    // modification time of the ruleset file when it was loaded, null if unknown
+    private FileTime lastModified;
+
+    // resolved types by name, empty if the ruleset does not contain the type
+    private final Map<String, Optional<MetadataType>> metadataTypes = new ConcurrentHashMap<>();
+    private final Map<String, Optional<DocStructType>> docStructTypes = new ConcurrentHashMap<>();
+
+    // configured rules -> compiled MODS mapping
+    private final Map<List<ModsMapping.Rule>, ModsMapping> modsMappings = new ConcurrentHashMap<>();
+
+    /**
+     * @param prefs the loaded ruleset
+     * @param rulesetPath the ruleset file, used to read the METS export names of the docstruct types
+     */
+    public RulesetMapping(Prefs prefs, Path rulesetPath) {
+        this.prefs = prefs;
+        Document rulesetDocument = XmlTools.readDocumentFromFile(rulesetPath);
+        Element metsElement = rulesetDocument.getRootElement().getChild("Formats").getChild("METS");
+
+        List<Element> docstructs = metsElement.getChildren("DocStruct");
+        for (Element ds : docstructs) {
+            docStructRulesetNames.put(ds.getChildText("MetsType").toLowerCase(), ds.getChildText("InternalName"));
+        }
+    }
+
+    /**
+     * get a metadata type of the ruleset, the result is cached
+     *
+     * @param name internal name of the type
+     * @return the type or null, if the ruleset does not contain it
+     */
+    public MetadataType getMetadataType(String name) {
+        return metadataTypes.computeIfAbsent(name, n -> Optional.ofNullable(prefs.getMetadataTypeByName(n))).orElse(null);
+    }
+
+    /**
+     * get a docstruct type of the ruleset, the result is cached
+     *
+     * @param name internal name of the type
+     * @return the type or null, if the ruleset does not contain it
+     */
+    public DocStructType getDocStructType(String name) {
+        return docStructTypes.computeIfAbsent(name, n -> Optional.ofNullable(prefs.getDocStrctTypeByName(n))).orElse(null);
+    }
+
+    /**
+     * get the compiled MODS mapping for a list of rules, the mapping is compiled only once for each list
+     *
+     * @param rules the mapping rules
+     * @return the compiled mapping
+     */
+    public ModsMapping getModsMapping(List<ModsMapping.Rule> rules) {
+        return modsMappings.computeIfAbsent(List.copyOf(rules), r -> new ModsMapping(r, this));
+    }
+
+    /**
+     * get the mapping of a ruleset from the ruleset folder. The mapping is loaded only if the ruleset was not loaded before or the file was
+     * changed in the meantime.
+     *
+     * @param ruleset the ruleset of a process
+     * @return the mapping
+     */
+    public static RulesetMapping load(Ruleset ruleset) {
+        return load(Paths.get(ConfigurationHelper.getInstance().getRulesetFolder(), ruleset.getDatei()), ruleset::getPreferences);
+    }
+
+    /**
+     * get the mapping of a ruleset file, from the cache if the file was not changed since it was loaded
+     *
+     * @param rulesetPath the ruleset file
+     * @param prefsLoader loads the ruleset, called only if the cache does not contain a current mapping
+     * @return the mapping
+     */
+    public static RulesetMapping load(Path rulesetPath, Supplier<Prefs> prefsLoader) {
+        FileTime modified = getLastModified(rulesetPath);
+        RulesetMapping cached = CACHE.get(rulesetPath);
+        if (cached != null && modified != null && modified.equals(cached.lastModified)) {
+            return cached;
+        }
+        log.debug("Load ruleset {}", rulesetPath);
+        RulesetMapping mapping = new RulesetMapping(prefsLoader.get(), rulesetPath);
+        mapping.lastModified = modified;
+        CACHE.put(rulesetPath, mapping);
+        return mapping;
+    }
+
+    private static FileTime getLastModified(Path rulesetPath) {
+        try {
+            return Files.getLastModifiedTime(rulesetPath);
+        } catch (IOException e) {
+            log.warn("Cannot get modification time of {}", rulesetPath);
+            return null;
+        }
+    }
+}
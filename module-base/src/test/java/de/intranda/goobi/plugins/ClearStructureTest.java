@@ -0,0 +1,183 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ugh.dl.ContentFile;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Prefs;
+import ugh.dl.Reference;
+
+public class ClearStructureTest {
+
+    private static final String IMAGE_FOLDER = "/opt/digiverso/goobi/metadata/1/images/test_media/";
+
+    private static String resourcesFolder;
+
+    private Prefs prefs;
+    private MigrateVisualLibraryToGoobiStepPlugin plugin;
+    private MetsRecord rec;
+
+    @BeforeClass
+    public static void setUpClass() {
+        resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Path rulesetPath = Paths.get(resourcesFolder, "ruleset.xml");
+        prefs = new Prefs();
+        prefs.loadPrefs(rulesetPath.toString());
+        plugin = new MigrateVisualLibraryToGoobiStepPlugin();
+        plugin.initializeTypes(new RulesetMapping(prefs, rulesetPath));
+        rec = MetsRecordReader.read(Paths.get(resourcesFolder, "record.xml"));
+    }
+
+    @Test
+    public void testReimportMatchesRemovingEachElement() throws Exception {
+        DigitalDocument expected = createMigratedDocument();
+        List<DocStruct> expectedPages = new ArrayList<>(expected.getPhysicalDocStruct().getAllChildren());
+        DigitalDocument actual = createMigratedDocument();
+        List<DocStruct> actualPages = new ArrayList<>(actual.getPhysicalDocStruct().getAllChildren());
+        assertTrue(actualPages.size() > 1);
+
+        clearOneByOne(expected, getVolume(expected));
+        plugin.clearStructure(actual, getVolume(actual));
+
+        List<String> cleared = describe(actual, actualPages);
+        assertEquals(describe(expected, expectedPages), cleared);
+        // the additional file of the first page is kept
+        assertEquals(2, actual.getFileSet().getAllFiles().size());
+
+        plugin.importRecord(expected, rec, IMAGE_FOLDER);
+        plugin.importRecord(actual, rec, IMAGE_FOLDER);
+
+        assertEquals(describe(expected, expectedPages), describe(actual, actualPages));
+        assertEquals(actualPages.size(), actual.getPhysicalDocStruct().getAllChildren().size());
+    }
+
+    /**
+     * create a document like it is read from the metadata file of a process that was migrated before, each page has a content file
+     */
+    private DigitalDocument createMigratedDocument() throws Exception {
+        DigitalDocument digitalDocument = new DigitalDocument();
+        DocStruct logical = digitalDocument.createDocStruct(prefs.getDocStrctTypeByName("MultiVolumeWork"));
+        logical.addChild(digitalDocument.createDocStruct(prefs.getDocStrctTypeByName("Volume")));
+        digitalDocument.setLogicalDocStruct(logical);
+        digitalDocument.setPhysicalDocStruct(digitalDocument.createDocStruct(prefs.getDocStrctTypeByName("BoundBook")));
+        plugin.importRecord(digitalDocument, rec, IMAGE_FOLDER);
+
+        List<DocStruct> pages = digitalDocument.getPhysicalDocStruct().getAllChildren();
+        for (DocStruct page : pages) {
+            if (page.getAllContentFiles() == null || page.getAllContentFiles().isEmpty()) {
+                addContentFile(digitalDocument, page, "file://" + IMAGE_FOLDER + page.getImageName());
+            }
+        }
+        // only the first file of a page is removed from the file set
+        addContentFile(digitalDocument, pages.get(0), "file://" + IMAGE_FOLDER + "additional.tif");
+        // files that do not belong to a page are kept
+        ContentFile other = new ContentFile();
+        other.setLocation("file://" + IMAGE_FOLDER + "other.tif");
+        digitalDocument.getFileSet().addFile(other);
+        return digitalDocument;
+    }
+
+    private static void addContentFile(DigitalDocument digitalDocument, DocStruct page, String location) {
+        ContentFile file = new ContentFile();
+        file.setLocation(location);
+        page.addContentFile(file);
+        digitalDocument.getFileSet().addFile(file);
+    }
+
+    private static DocStruct getVolume(DigitalDocument digitalDocument) {
+        return digitalDocument.getLogicalDocStruct().getAllChildren().get(0);
+    }
+
+    /**
+     * the previous implementation of clearStructure, each element is removed on its own
+     */
+    private static void clearOneByOne(DigitalDocument digitalDocument, DocStruct logical) {
+        DocStruct physical = digitalDocument.getPhysicalDocStruct();
+        for (DocStruct page : physical.getAllChildren()) {
+            digitalDocument.getFileSet().removeFile(page.getAllContentFiles().get(0));
+            List<Reference> refs = new ArrayList<>(page.getAllFromReferences());
+            for (Reference ref : refs) {
+                ref.getSource().removeReferenceTo(page);
+            }
+        }
+        while (physical.getAllChildren() != null && !physical.getAllChildren().isEmpty()) {
+            physical.removeChild(physical.getAllChildren().get(0));
+        }
+        while (logical.getAllChildren() != null && !logical.getAllChildren().isEmpty()) {
+            logical.removeChild(logical.getAllChildren().get(0));
+        }
+    }
+
+    /**
+     * describe the file set and all elements of the document, including the removed pages. Elements are named by their position, so the
+     * descriptions of two documents can be compared.
+     */
+    private static List<String> describe(DigitalDocument digitalDocument, List<DocStruct> removedPages) {
+        Map<DocStruct, String> names = new IdentityHashMap<>();
+        List<DocStruct> elements = new ArrayList<>();
+        collect(digitalDocument.getLogicalDocStruct(), "logical", names, elements);
+        collect(digitalDocument.getPhysicalDocStruct(), "physical", names, elements);
+        for (int i = 0; i < removedPages.size(); i++) {
+            collect(removedPages.get(i), "removed" + i, names, elements);
+        }
+
+        List<String> description = new ArrayList<>();
+        for (ContentFile file : digitalDocument.getFileSet().getAllFiles()) {
+            description.add("file " + file.getLocation());
+        }
+        for (DocStruct element : elements) {
+            StringBuilder line = new StringBuilder(names.get(element));
+            line.append(' ').append(element.getType().getName());
+            line.append(" parent=").append(element.getParent() == null ? null : names.get(element.getParent()));
+            line.append(" children=").append(element.getAllChildren() == null ? null : element.getAllChildren().size());
+            for (Reference ref : element.getAllReferences("to")) {
+                line.append(" to=").append(ref.getType()).append(':').append(names.get(ref.getTarget()));
+            }
+            for (Reference ref : element.getAllFromReferences()) {
+                line.append(" from=").append(ref.getType()).append(':').append(names.get(ref.getSource()));
+            }
+            if (element.getAllContentFiles() != null) {
+                for (ContentFile file : element.getAllContentFiles()) {
+                    line.append(" content=").append(file.getLocation());
+                }
+            }
+            description.add(line.toString());
+        }
+        return description;
+    }
+
+    private static void collect(DocStruct element, String name, Map<DocStruct, String> names, List<DocStruct> elements) {
+        if (names.containsKey(element)) {
+            return;
+        }
+        names.put(element, name);
+        elements.add(element);
+        if (element.getAllChildren() != null) {
+            for (int i = 0; i < element.getAllChildren().size(); i++) {
+                collect(element.getAllChildren().get(i), name + "/" + i, names, elements);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.goobi.plugins.DownloadManifest.Entry;
+import de.intranda.goobi.plugins.DownloadManifest.State;
+
+public class DownloadManifestTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLastStateWins() throws Exception {
+        Path manifestFile = folder.getRoot().toPath().resolve("import").resolve("download_manifest.txt");
+        Path image = folder.getRoot().toPath().resolve("IMG_MAX_1.jpeg");
+
+        try (DownloadManifest manifest = DownloadManifest.load(manifestFile)) {
+            assertNull(manifest.get(image));
+            manifest.update(new Entry("https://example.com/1", image.toString(), 0, "\"abc\"", null, null, State.PARTIAL));
+            manifest.update(new Entry("https://example.com/1", image.toString(), 42, "\"abc\"", null, "0815", State.COMPLETE));
+        }
+        // compacted on close
+        assertEquals(1, Files.readAllLines(manifestFile).size());
+
+        try (DownloadManifest manifest = DownloadManifest.load(manifestFile)) {
+            Entry entry = manifest.get(image);
+            assertEquals(State.COMPLETE, entry.getState());
+            assertEquals(42, entry.getSize());
+            assertEquals("\"abc\"", entry.getEtag());
+            assertNull(entry.getLastModified());
+            assertEquals("0815", entry.getChecksum());
+            assertEquals("https://example.com/1", entry.getUrl());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpServer;
+
+import de.intranda.goobi.plugins.DownloadManifest.Entry;
+
+public class DownloadPipelineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private CountDownLatch requestReceived = new CountDownLatch(1);
+    // the slow download is answered when the test is finished
+    private CountDownLatch testFinished = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/slow", exchange -> {
+            requestReceived.countDown();
+            try {
+                testFinished.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        server.createContext("/image", exchange -> {
+            byte[] content = "image".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, content.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(content);
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        testFinished.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    public void testFailedConversionInterruptsDownloads() throws Exception {
+        String url = "http://localhost:" + server.getAddress().getPort() + "/slow";
+        Path target = folder.getRoot().toPath().resolve("00000001.jpg");
+        Future<Entry> download = null;
+        long start = System.nanoTime();
+        try (DownloadPipeline pipeline = new DownloadPipeline(2)) {
+            download = pipeline.submit(() -> HttpTransfer.download(url, target, null));
+            assertTrue(requestReceived.await(5, TimeUnit.SECONDS));
+            // the conversion fails with an unchecked exception while the image is downloaded
+            throw new IllegalStateException("conversion failed");
+        } catch (IllegalStateException e) {
+            assertEquals("conversion failed", e.getMessage());
+        }
+
+        // closing the pipeline did not wait for the server
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        assertTrue(download.isDone());
+        assertFalse(Files.exists(target));
+    }
+
+    @Test
+    public void testFailedImageDownloadInterruptsFulltexts() throws Exception {
+        String url = "http://localhost:" + server.getAddress().getPort() + "/slow";
+        Path target = folder.getRoot().toPath().resolve("00000001.xml");
+        Future<Entry> fulltextDownload;
+        long start = System.nanoTime();
+        try (DownloadPipeline pipeline = new DownloadPipeline(2)) {
+            fulltextDownload = pipeline.submit(() -> HttpTransfer.download(url, target, null));
+            assertTrue(requestReceived.await(5, TimeUnit.SECONDS));
+            // a linked image could not be downloaded
+            Future<Boolean> imageDownload = pipeline.submit(() -> false);
+
+            assertFalse(pipeline.await(imageDownload, fulltextDownload));
+        }
+
+        // the fulltext download was interrupted instead of waiting for the server
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        assertTrue(fulltextDownload.isDone());
+        assertFalse(Files.exists(target));
+    }
+
+    @Test
+    public void testCompletedDownloads() throws Exception {
+        String url = "http://localhost:" + server.getAddress().getPort() + "/image";
+        Path target = folder.getRoot().toPath().resolve("00000001.jpg");
+        try (DownloadPipeline pipeline = new DownloadPipeline(2)) {
+            Future<Entry> fulltextDownload = pipeline.submit(() -> HttpTransfer.download(url, target, null));
+            Future<Boolean> imageDownload = pipeline.submit(() -> true);
+
+            assertTrue(pipeline.await(imageDownload, fulltextDownload));
+        }
+
+        assertEquals("image", Files.readString(target));
+    }
+}
@@ -0,0 +1,131 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class HostRateLimiterTest {
+
+    @Test
+    public void testUnlimited() {
+        HostRateLimiter limiter = new HostRateLimiter(0, 1, 0);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, limiter.reserveToken());
+        }
+    }
+
+    @Test
+    public void testBurst() {
+        HostRateLimiter limiter = new HostRateLimiter(1, 3, 0);
+        assertEquals(0, limiter.reserveToken());
+        assertEquals(0, limiter.reserveToken());
+        assertEquals(0, limiter.reserveToken());
+        long wait = limiter.reserveToken();
+        assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(900));
+        // the next request waits one more interval
+        assertTrue(limiter.reserveToken() > wait + TimeUnit.MILLISECONDS.toNanos(900));
+    }
+
+    @Test
+    public void testMaxConcurrent() throws Exception {
+        HostRateLimiter limiter = new HostRateLimiter(0, 1, 1);
+        limiter.acquire();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread other = new Thread(() -> {
+            try {
+                limiter.acquire();
+                acquired.countDown();
+                limiter.release();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        other.start();
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        limiter.release();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLowerLimitWhileRequestsAreRunning() throws Exception {
+        HostRateLimiter limiter = new HostRateLimiter(0, 1, 2);
+        limiter.acquire();
+        limiter.acquire();
+        limiter.setLimits(0, 1, 1);
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread other = new Thread(() -> {
+            try {
+                limiter.acquire();
+                acquired.countDown();
+                limiter.release();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        other.start();
+        // both running requests still count against the new limit
+        limiter.release();
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        limiter.release();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testHigherLimitReleasesWaitingRequests() throws Exception {
+        HostRateLimiter limiter = new HostRateLimiter(0, 1, 1);
+        limiter.acquire();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread other = new Thread(() -> {
+            try {
+                limiter.acquire();
+                acquired.countDown();
+                limiter.release();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        other.start();
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        limiter.setLimits(0, 1, 2);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        limiter.release();
+    }
+
+    // a deadlock of the waiting virtual threads fails the test instead of blocking the build
+    @Test(timeout = 120000)
+    public void testManyVirtualThreads() throws Exception {
+        HostRateLimiter limiter = new HostRateLimiter(0, 1, 1);
+        int threads = 400;
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch finished = new CountDownLatch(threads);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < threads; i++) {
+                executor.submit(() -> {
+                    limiter.acquire();
+                    try {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        // the permit holder is unmounted while it waits, like a request waiting for the response
+                        Thread.sleep(1);
+                        running.decrementAndGet();
+                    } finally {
+                        limiter.release();
+                        finished.countDown();
+                    }
+                    return null;
+                });
+            }
+            // waiting threads must not block the carrier threads of the permit holders
+            assertTrue(finished.await(60, TimeUnit.SECONDS));
+        }
+        assertEquals(1, maxRunning.get());
+    }
+}
@@ -0,0 +1,160 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.intranda.goobi.plugins.DownloadManifest.Entry;
+import de.intranda.goobi.plugins.DownloadManifest.State;
+import de.intranda.goobi.plugins.HttpTransfer.ChecksumMismatchException;
+
+public class HttpTransferTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ServerSocket server;
+    private byte[] content = new byte[100000];
+
+    @Before
+    public void setUp() throws Exception {
+        Arrays.fill(content, (byte) 'x');
+        server = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(() -> {
+            // the first response is cut off after a part of the content
+            boolean truncate = true;
+            while (!server.isClosed()) {
+                try (Socket socket = server.accept()) {
+                    respond(socket, truncate);
+                    truncate = false;
+                } catch (IOException e) {
+                    // server closed
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void respond(Socket socket, boolean truncate) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+        int start = 0;
+        String line;
+        while ((line = reader.readLine()) != null && !line.isEmpty()) {
+            if (line.toLowerCase().startsWith("range: bytes=")) {
+                start = Integer.parseInt(line.substring("range: bytes=".length(), line.length() - 1));
+            }
+        }
+        StringBuilder headers = new StringBuilder();
+        headers.append(start > 0 ? "HTTP/1.1 206 Partial Content\r\n" : "HTTP/1.1 200 OK\r\n");
+        headers.append("ETag: \"v1\"\r\nConnection: close\r\n");
+        if (start > 0) {
+            headers.append("Content-Range: bytes " + start + "-" + (content.length - 1) + "/" + content.length + "\r\n");
+        }
+        headers.append("Content-Length: " + (content.length - start) + "\r\n\r\n");
+        OutputStream out = socket.getOutputStream();
+        out.write(headers.toString().getBytes(StandardCharsets.ISO_8859_1));
+        out.write(content, start, truncate ? 40000 : content.length - start);
+        out.flush();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void testIncompleteDownloadIsResumed() throws Exception {
+        Path target = folder.getRoot().toPath().resolve("00000001.jpg");
+        String url = "http://localhost:" + server.getLocalPort() + "/image";
+        try (DownloadManifest manifest = DownloadManifest.load(folder.getRoot().toPath().resolve("manifest.txt"))) {
+            try {
+                HttpTransfer.download(url, target, manifest);
+                fail("incomplete download not detected");
+            } catch (IOException e) {
+                // expected
+            }
+            assertFalse(Files.exists(target));
+            assertTrue(Files.size(HttpTransfer.getPartFile(target)) > 0);
+            assertEquals(State.PARTIAL, manifest.get(target).getState());
+
+            HttpTransfer.download(url, target, manifest);
+            assertArrayEquals(content, Files.readAllBytes(target));
+            assertFalse(Files.exists(HttpTransfer.getPartFile(target)));
+            assertEquals(State.COMPLETE, manifest.get(target).getState());
+        }
+    }
+
+    @Test
+    public void testChecksumMismatch() throws Exception {
+        Path target = folder.getRoot().toPath().resolve("00000002.jpg");
+        String url = "http://localhost:" + server.getLocalPort() + "/image";
+        try (DownloadManifest manifest = DownloadManifest.load(folder.getRoot().toPath().resolve("manifest.txt"))) {
+            // resume the truncated response first
+            try {
+                HttpTransfer.download(url, target, manifest, "MD5", "00000000000000000000000000000000");
+                fail("incomplete download not detected");
+            } catch (IOException e) {
+                // expected
+            }
+            try {
+                HttpTransfer.download(url, target, manifest, "MD5", "00000000000000000000000000000000");
+                fail("checksum mismatch not detected");
+            } catch (ChecksumMismatchException e) {
+                // expected
+            }
+            assertFalse(Files.exists(target));
+            assertFalse(Files.exists(HttpTransfer.getPartFile(target)));
+            assertEquals(State.FAILED, manifest.get(target).getState());
+
+            String md5 = HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(content));
+            Entry entry = HttpTransfer.download(url, target, manifest, "MD5", md5.toUpperCase());
+            assertEquals(State.COMPLETE, entry.getState());
+            assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content)), entry.getChecksum());
+        }
+    }
+
+    @Test
+    public void testCompressedDownload() throws Exception {
+        Path target = folder.getRoot().toPath().resolve("00000003.xml.gz");
+        String url = "http://localhost:" + server.getLocalPort() + "/alto";
+        try (DownloadManifest manifest = DownloadManifest.load(folder.getRoot().toPath().resolve("manifest.txt"))) {
+            try {
+                HttpTransfer.download(url, target, manifest, null, null, true);
+                fail("incomplete download not detected");
+            } catch (IOException e) {
+                // expected
+            }
+            // compressed files are downloaded again instead of resumed
+            Entry entry = HttpTransfer.download(url, target, manifest, null, null, true);
+            assertEquals(Files.size(target), entry.getSize());
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(target))) {
+                assertArrayEquals(content, in.readAllBytes());
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpServer;
+
+import de.intranda.goobi.plugins.IntegrityReport.Status;
+import de.intranda.goobi.plugins.MediaDownloader.DownloadFile;
+
+public class MediaDownloaderTest {
+
+    private static final byte[] CONTENT = "image content".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private AtomicInteger fullResponses = new AtomicInteger();
+    private AtomicInteger notModifiedResponses = new AtomicInteger();
+    private String url;
+    private Path target;
+    private Path manifestFile;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/image", exchange -> {
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModifiedResponses.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                fullResponses.incrementAndGet();
+                exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(200, CONTENT.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(CONTENT);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/image";
+        target = folder.newFolder("images").toPath().resolve("00000001.jpg");
+        manifestFile = folder.getRoot().toPath().resolve("import").resolve("download_manifest.txt");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testTransferredFileIsVerified() throws Exception {
+        assertEquals(Status.VERIFIED, download("MD5", checksum("MD5"), false));
+        assertEquals(1, fullResponses.get());
+    }
+
+    @Test
+    public void testNotModifiedFile() throws Exception {
+        download("MD5", checksum("MD5"), false);
+
+        // the MD5 checksum of the METS file is not compared with the kept file
+        assertEquals(Status.NOT_VERIFIED, download("MD5", checksum("MD5"), false));
+        // the SHA-256 checksum is compared with the checksum stored in the manifest
+        assertEquals(Status.VERIFIED, download("SHA-256", checksum("SHA-256"), false));
+        assertEquals(1, fullResponses.get());
+        assertEquals(2, notModifiedResponses.get());
+    }
+
+    @Test
+    public void testUnchangedFileIsSkipped() throws Exception {
+        download("MD5", checksum("MD5"), false);
+
+        assertEquals(Status.NOT_VERIFIED, download("MD5", checksum("MD5"), true));
+        assertEquals(Status.VERIFIED, download("SHA-256", checksum("SHA-256"), true));
+        // a different SHA-256 checksum is not reported as verified
+        assertEquals(Status.NOT_VERIFIED, download("SHA-256", checksum("MD5"), true));
+        assertEquals(1, fullResponses.get());
+        assertEquals(0, notModifiedResponses.get());
+    }
+
+    /**
+     * download the image with a new manifest and report, like a new run of the plugin
+     *
+     * @return the status of the image in the integrity report
+     */
+    private Status download(String checksumType, String checksum, boolean unchanged) throws Exception {
+        IntegrityReport report = new IntegrityReport();
+        try (DownloadManifest manifest = DownloadManifest.load(manifestFile); MediaDownloader downloader = new MediaDownloader(1, false)) {
+            downloader.setManifest(manifest);
+            downloader.setIntegrityReport(report);
+            downloader.setRetryPolicy(new RetryPolicy(1, Duration.ZERO, Duration.ZERO));
+            downloader.downloadAll(List.of(new DownloadFile("FILE_0001", url, target, checksumType, checksum, unchanged)), file -> false);
+        }
+        assertEquals(1, report.getFileCount());
+        return report.getCounts().keySet().iterator().next();
+    }
+
+    private static String checksum(String algorithm) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance(algorithm).digest(CONTENT));
+    }
+}
@@ -0,0 +1,95 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.intranda.goobi.plugins.MetsRecord.MetsFile;
+import de.intranda.goobi.plugins.MetsRecord.PhysicalDiv;
+
+public class MetsRecordDiffTest {
+
+    private static String resourcesFolder;
+
+    @BeforeClass
+    public static void setUpClass() {
+        resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+    }
+
+    @Test
+    public void testUnchangedRecord() throws Exception {
+        Path file = Paths.get(resourcesFolder, "sample.xml");
+        MetsRecordDiff diff = MetsRecordDiff.compare(MetsRecordReader.read(file), MetsRecordReader.read(file));
+        assertFalse(diff.isMetadataChanged());
+        assertTrue(diff.getChangedFileIds().isEmpty());
+        assertTrue(diff.getRemovedFiles().isEmpty());
+    }
+
+    @Test
+    public void testNoPreviousRecord() throws Exception {
+        MetsRecord current = MetsRecordReader.read(Paths.get(resourcesFolder, "sample.xml"));
+        MetsRecordDiff diff = MetsRecordDiff.compare(null, current);
+        assertTrue(diff.isMetadataChanged());
+        assertEquals(current.getFilesById().size(), diff.getChangedFileIds().size());
+    }
+
+    @Test
+    public void testChangedFilesAndPages() throws Exception {
+        Path file = Paths.get(resourcesFolder, "sample.xml");
+        MetsRecord previous = MetsRecordReader.read(file);
+        MetsRecord current = MetsRecordReader.read(file);
+
+        MetsFile image = current.getImageFileGroup().get(0);
+        MetsFile removed = current.getImageFileGroup().get(1);
+        // new checksum for the first image, the second image was removed
+        current.getFilesById().put(image.getId(), new MetsFile(image.getId(), image.getUse(), image.getMimeType(), image.getUrl(), "MD5",
+                "d41d8cd98f00b204e9800998ecf8427e"));
+        current.getFilesById().remove(removed.getId());
+
+        MetsRecordDiff diff = MetsRecordDiff.compare(previous, current);
+        assertFalse(diff.isMetadataChanged());
+        assertEquals(1, diff.getChangedFileIds().size());
+        assertFalse(diff.isFileUnchanged(image.getId()));
+        assertEquals(1, diff.getRemovedFiles().size());
+        assertEquals(removed.getId(), diff.getRemovedFiles().get(0).getId());
+
+        // new page label
+        List<PhysicalDiv> pages = new ArrayList<>(current.getPages());
+        PhysicalDiv page = pages.get(0);
+        pages.set(0, new PhysicalDiv(page.getId(), page.getOrder(), "[I]", page.getContentIds(), page.getFileIds()));
+        current.setPages(pages);
+        assertTrue(MetsRecordDiff.compare(previous, current).isMetadataChanged());
+    }
+
+    @Test
+    public void testChangedMimeType() throws Exception {
+        Path file = Paths.get(resourcesFolder, "sample.xml");
+        MetsRecord previous = MetsRecordReader.read(file);
+        MetsRecord current = MetsRecordReader.read(file);
+
+        MetsFile image = current.getImageFileGroup().get(0);
+        current.getFilesById().put(image.getId(), new MetsFile(image.getId(), image.getUse(), "image/png", image.getUrl(),
+                image.getChecksumType(), image.getChecksum()));
+
+        // the image is stored under a new name, the old file is deleted and the metadata is converted again
+        MetsRecordDiff diff = MetsRecordDiff.compare(previous, current);
+        assertTrue(diff.isMetadataChanged());
+        assertFalse(diff.isFileUnchanged(image.getId()));
+        assertEquals(1, diff.getRemovedFiles().size());
+        assertEquals(image.getId(), diff.getRemovedFiles().get(0).getId());
+        assertEquals(previous.getFile(image.getId()).getMimeType(), diff.getRemovedFiles().get(0).getMimeType());
+    }
+}
@@ -0,0 +1,108 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.jdom2.Element;
+import org.jdom2.input.SAXBuilder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.intranda.goobi.plugins.MetsRecord.LogicalDiv;
+import de.intranda.goobi.plugins.MetsRecord.PhysicalDiv;
+
+public class MetsRecordReaderTest {
+
+    private static String resourcesFolder;
+
+    @BeforeClass
+    public static void setUpClass() {
+        resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+    }
+
+    @Test
+    public void testReadOaiResponse() throws Exception {
+        MetsRecord rec = MetsRecordReader.read(Paths.get(resourcesFolder, "sample.xml"));
+        assertNotNull(rec);
+
+        // physical structure
+        assertEquals(454, rec.getPages().size());
+        PhysicalDiv firstPage = rec.getPages().get(0);
+        assertEquals("phys168786", firstPage.getId());
+        assertEquals("1", firstPage.getOrder());
+        assertTrue(firstPage.getFileIds().contains("IMG_MAX_168786"));
+
+        // files
+        assertEquals(454, rec.getImageFileGroup().size());
+        assertEquals("MAX", rec.getImageFileGroup().get(0).getUse());
+        assertEquals("https://visuallibrary.net/download/webcache/0/168786", rec.getImageFileGroup().get(0).getUrl());
+        assertEquals(454, rec.getFulltextFileGroup().size());
+        assertEquals("FULLTEXT", rec.getFile("ALTO168786").getUse());
+        assertEquals("MAX", rec.getFile("IMG_MAX_168786").getUse());
+        assertNull(rec.getFile("unknown"));
+
+        // logical structure
+        LogicalDiv root = rec.getLogicalRoot();
+        assertEquals("multivolume_work", root.getType());
+        assertTrue(root.isMptr());
+        LogicalDiv volume = root.getChildren().get(0);
+        assertEquals("md166224", volume.getDmdId());
+        assertFalse(volume.isMptr());
+
+        // metadata and links
+        Element mods = rec.getModsElement("md166224");
+        assertNotNull(mods);
+        assertEquals("mods", mods.getName());
+        assertNotNull(mods.getChild("titleInfo", MigrateVisualLibraryToGoobiStepPlugin.mods));
+        assertFalse(rec.getLinks().isEmpty());
+
+        // reverse index
+        assertEquals("phys168786", rec.getPageId("IMG_MAX_168786"));
+        assertFalse(rec.getLinkedLogicalIds("phys168786").isEmpty());
+        assertTrue(rec.isFileLinked("IMG_MAX_168786"));
+        assertFalse(rec.isFileLinked("PDF_166224"));
+    }
+
+    @Test
+    public void testReadAnchor() throws Exception {
+        MetsRecord rec = MetsRecordReader.read(Paths.get(resourcesFolder, "sample_anchor.xml"));
+        assertNotNull(rec);
+        assertNull(rec.getPages());
+        assertNotNull(rec.getModsElement("md166226"));
+    }
+
+    @Test
+    public void testReadElement() throws Exception {
+        Element root = new SAXBuilder().build(new File(resourcesFolder + "sample_monograph.xml")).getRootElement();
+        MetsRecord rec = MetsRecordReader.read(root);
+        assertNotNull(rec);
+        assertEquals(40, rec.getPages().size());
+        assertEquals(rec.getPages().size(), rec.getImageFileGroup().size());
+    }
+
+    @Test
+    public void testReleaseMetadata() throws Exception {
+        MetsRecord rec = MetsRecordReader.read(Paths.get(resourcesFolder, "sample.xml"));
+        // each call parses a new element
+        assertNotSame(rec.getModsElement("md166224"), rec.getModsElement("md166224"));
+
+        rec.releaseMetadata();
+        assertNull(rec.getModsElement("md166224"));
+        assertNull(rec.getLogicalRoot());
+        // the files and the link index are still available for the downloads
+        assertEquals(454, rec.getImageFileGroup().size());
+        assertTrue(rec.isFileLinked("IMG_MAX_168786"));
+    }
+}
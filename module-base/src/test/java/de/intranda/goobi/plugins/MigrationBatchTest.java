@@ -0,0 +1,156 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.goobi.beans.Process;
+import org.goobi.beans.Step;
+import org.junit.Test;
+
+import de.sub.goobi.helper.enums.StepStatus;
+
+public class MigrationBatchTest {
+
+    private static final String PLUGIN_TITLE = "intranda_step_migrate_visual_library_to_goobi";
+
+    private Map<Integer, Process> processes = new HashMap<>();
+    private Set<Integer> closedProcesses = ConcurrentHashMap.newKeySet();
+    // counted down when the second record is converted
+    private CountDownLatch secondConverted = new CountDownLatch(1);
+
+    @Test(timeout = 60000)
+    public void testDownloadWhileNextRecordIsConverted() throws Exception {
+        Process first = createProcess(1);
+        Process second = createProcess(2);
+        try (MigrationBatch batch = createBatch()) {
+            Map<Integer, Boolean> results = batch.migrate(List.of(1, 2));
+            assertTrue(results.get(1));
+            assertTrue(results.get(2));
+        }
+        assertEquals(Set.of(1, 2), closedProcesses);
+        assertNull(getStep(first).getBearbeitungsstatusEnum());
+        assertNull(getStep(second).getBearbeitungsstatusEnum());
+    }
+
+    @Test(timeout = 60000)
+    public void testFailedMigrationsSetStepToError() throws Exception {
+        Process first = createProcess(1);
+        Process failedConversion = createProcess(3);
+        Process failedDownload = createProcess(4);
+        secondConverted.countDown();
+        try (MigrationBatch batch = createBatch()) {
+            Map<Integer, Boolean> results = batch.migrate(List.of(1, 3, 4, 5));
+            assertTrue(results.get(1));
+            assertFalse(results.get(3));
+            assertFalse(results.get(4));
+            // process 5 does not exist
+            assertFalse(results.get(5));
+        }
+        assertEquals(Set.of(1), closedProcesses);
+        assertNull(getStep(first).getBearbeitungsstatusEnum());
+        assertEquals(StepStatus.ERROR, getStep(failedConversion).getBearbeitungsstatusEnum());
+        assertEquals(StepStatus.ERROR, getStep(failedDownload).getBearbeitungsstatusEnum());
+    }
+
+    private Process createProcess(int id) {
+        Process process = new Process();
+        process.setId(id);
+        Step step = new Step();
+        step.setStepPlugin(PLUGIN_TITLE);
+        step.setProzess(process);
+        process.setSchritte(List.of(step));
+        processes.put(id, process);
+        return process;
+    }
+
+    private static Step getStep(Process process) {
+        return process.getSchritte().get(0);
+    }
+
+    private MigrationBatch createBatch() {
+        return new MigrationBatch(TestPlugin::new, 1, 1) {
+
+            @Override
+            Process getProcess(Integer processId) {
+                return processes.get(processId);
+            }
+
+            @Override
+            RulesetMapping getRulesetMapping(Process process) {
+                return null;
+            }
+
+            @Override
+            void closeStep(Step step) {
+                closedProcesses.add(step.getProzess().getId());
+            }
+
+            @Override
+            void saveStep(Step step) {
+                // nothing to save
+            }
+        };
+    }
+
+    /**
+     * Process 1 finishes its download only after process 2 was converted, process 3 fails during the conversion and process 4 during the
+     * download.
+     */
+    private class TestPlugin extends MigrateVisualLibraryToGoobiStepPlugin {
+
+        private static final long serialVersionUID = 1L;
+
+        private Step testStep;
+
+        @Override
+        public void initialize(Step step, RulesetMapping rulesetMapping) {
+            testStep = step;
+        }
+
+        @Override
+        public Step getStep() {
+            return testStep;
+        }
+
+        @Override
+        public boolean convert() {
+            int id = testStep.getProzess().getId();
+            if (id == 2) {
+                secondConverted.countDown();
+            } else if (id == 3) {
+                throw new IllegalStateException("conversion failed");
+            }
+            return true;
+        }
+
+        @Override
+        public boolean downloadMedia() {
+            int id = testStep.getProzess().getId();
+            if (id == 1) {
+                try {
+                    // the conversion pool has a single thread, so this only succeeds if both pools run at the same time
+                    return secondConverted.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return id != 4;
+        }
+
+        @Override
+        void finishRecord() {
+            // no timing summary
+        }
+    }
+}
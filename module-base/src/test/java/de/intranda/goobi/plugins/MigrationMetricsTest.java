@@ -0,0 +1,64 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MigrationMetricsTest {
+
+    private MigrationMetrics metrics = MigrationMetrics.getInstance();
+
+    @Before
+    public void setUp() {
+        metrics.reset();
+    }
+
+    @Test
+    public void testRegistration() throws Exception {
+        ObjectName name = new ObjectName(MigrationMetrics.OBJECT_NAME);
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+
+        metrics.recordMigrated(true);
+        assertEquals(1l, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "RecordsMigrated"));
+    }
+
+    @Test
+    public void testHostStatistics() {
+        for (int i = 0; i < 18; i++) {
+            metrics.request("example.com", TimeUnit.MILLISECONDS.toNanos(20), false);
+        }
+        metrics.request("example.com", TimeUnit.MILLISECONDS.toNanos(400), false);
+        metrics.request("example.com", TimeUnit.MILLISECONDS.toNanos(3000), true);
+        metrics.request(null, TimeUnit.MILLISECONDS.toNanos(20), false);
+
+        HostStatistics statistics = metrics.getHosts().get("example.com");
+        assertEquals(1, metrics.getHosts().size());
+        assertEquals(20, statistics.getRequests());
+        assertEquals(1, statistics.getFailures());
+        assertEquals(25, statistics.getP50Millis());
+        assertEquals(500, statistics.getP95Millis());
+        assertEquals(3000, statistics.getMaxMillis());
+        assertEquals(18, statistics.getBucketCounts()[1]);
+    }
+
+    @Test
+    public void testCounters() {
+        metrics.addBytes(100);
+        metrics.addBytes(50);
+        metrics.fileDownloaded(true);
+        metrics.fileDownloaded(false);
+        metrics.addDownloadTime(TimeUnit.SECONDS.toNanos(2));
+
+        assertEquals(150, metrics.getBytesDownloaded());
+        assertEquals(1, metrics.getFilesDownloaded());
+        assertEquals(1, metrics.getFilesFailed());
+        assertEquals(2000, metrics.getDownloadMillis());
+    }
+}
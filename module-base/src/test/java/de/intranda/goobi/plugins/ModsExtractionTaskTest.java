@@ -0,0 +1,102 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Metadata;
+import ugh.dl.Prefs;
+
+public class ModsExtractionTaskTest {
+
+    private static final int ISSUES = 3;
+    private static final int ARTICLES = 40;
+
+    private static String resourcesFolder;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUpClass() {
+        resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+    }
+
+    @Test
+    public void testParallelExtraction() throws Exception {
+        Path rulesetPath = Paths.get(resourcesFolder, "ruleset.xml");
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(rulesetPath.toString());
+        RulesetMapping rulesetMapping = new RulesetMapping(prefs, rulesetPath);
+        ModsMapping mapping = rulesetMapping.getModsMapping(ModsMapping.DEFAULT_RULES);
+        MetsRecord rec = MetsRecordReader.read(createRecord());
+
+        Map<String, ModsMapping.Values> values = new ConcurrentHashMap<>();
+        try (ForkJoinPool pool = new ForkJoinPool(4)) {
+            pool.invoke(new ModsExtractionTask(List.of(rec.getLogicalRoot()), rec, mapping, values));
+        }
+
+        assertEquals(1 + ISSUES + ISSUES * ARTICLES, values.size());
+        DigitalDocument digitalDocument = new DigitalDocument();
+        for (int issue = 1; issue <= ISSUES; issue++) {
+            for (int article = 1; article <= ARTICLES; article++) {
+                DocStruct docstruct = digitalDocument.createDocStruct(rulesetMapping.getDocStructType("Monograph"));
+                values.get("md_" + issue + "_" + article).addTo(docstruct);
+                List<? extends Metadata> titles = docstruct.getAllMetadataByType(rulesetMapping.getMetadataType("TitleDocMain"));
+                assertEquals(1, titles.size());
+                assertEquals("Article " + issue + "." + article, titles.get(0).getValue());
+            }
+        }
+    }
+
+    /**
+     * a volume with issues and articles, each div has its own dmdSec
+     */
+    private Path createRecord() throws Exception {
+        Path metsFile = folder.newFile("periodical.xml").toPath();
+        StringBuilder dmdSecs = new StringBuilder(dmdSec("md_volume", "Volume"));
+        StringBuilder structMap = new StringBuilder("<mets:div ID=\"log_volume\" DMDID=\"md_volume\" TYPE=\"volume\">");
+        for (int issue = 1; issue <= ISSUES; issue++) {
+            dmdSecs.append(dmdSec("md_" + issue, "Issue " + issue));
+            structMap.append("<mets:div ID=\"log_" + issue + "\" DMDID=\"md_" + issue + "\" TYPE=\"issue\">");
+            for (int article = 1; article <= ARTICLES; article++) {
+                String id = issue + "_" + article;
+                dmdSecs.append(dmdSec("md_" + id, "Article " + issue + "." + article));
+                structMap.append("<mets:div ID=\"log_" + id + "\" DMDID=\"md_" + id + "\" TYPE=\"article\"/>");
+            }
+            structMap.append("</mets:div>");
+        }
+        structMap.append("</mets:div>");
+        try (BufferedWriter out = Files.newBufferedWriter(metsFile, StandardCharsets.UTF_8)) {
+            out.write("<mets:mets xmlns:mets=\"http://www.loc.gov/METS/\" xmlns:mods=\"http://www.loc.gov/mods/v3\">");
+            out.write(dmdSecs.toString());
+            out.write("<mets:structMap TYPE=\"LOGICAL\">" + structMap + "</mets:structMap>");
+            out.write("</mets:mets>");
+        }
+        return metsFile;
+    }
+
+    private static String dmdSec(String id, String title) {
+        return "<mets:dmdSec ID=\"" + id + "\"><mets:mdWrap MDTYPE=\"MODS\"><mets:xmlData><mods:mods><mods:titleInfo><mods:title>" + title
+                + "</mods:title></mods:titleInfo></mods:mods></mets:xmlData></mets:mdWrap></mets:dmdSec>";
+    }
+}
@@ -0,0 +1,117 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom2.Element;
+import org.jdom2.input.SAXBuilder;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Metadata;
+import ugh.dl.Person;
+import ugh.dl.Prefs;
+
+public class ModsMappingTest {
+
+    private static final String MODS = "<mods:mods xmlns:mods=\"http://www.loc.gov/mods/v3\">"
+            + "<mods:titleInfo><mods:title>Main title</mods:title></mods:titleInfo>"
+            + "<mods:titleInfo type=\"alternative\"><mods:title>Other title</mods:title></mods:titleInfo>"
+            + "<mods:name type=\"personal\"><mods:displayForm>Mustermann, Max</mods:displayForm></mods:name>"
+            + "<mods:name type=\"personal\"><mods:namePart type=\"family\">Musterfrau</mods:namePart>"
+            + "<mods:namePart type=\"given\">Erika</mods:namePart><mods:role><mods:roleTerm>prt</mods:roleTerm></mods:role></mods:name>"
+            + "<mods:originInfo eventType=\"publication\"><mods:dateIssued>1900</mods:dateIssued><mods:dateIssued>1901</mods:dateIssued>"
+            + "</mods:originInfo>"
+            + "<mods:originInfo><mods:dateIssued>2023</mods:dateIssued></mods:originInfo>"
+            + "<mods:identifier type=\"vd17\">1:234</mods:identifier>"
+            + "<mods:location><mods:physicalLocation>Library</mods:physicalLocation><mods:shelfLocator>A 1</mods:shelfLocator></mods:location>"
+            + "<mods:location><mods:physicalLocation>Other library</mods:physicalLocation></mods:location>"
+            + "</mods:mods>";
+
+    private static String resourcesFolder;
+
+    private RulesetMapping rulesetMapping;
+    private DigitalDocument digitalDocument;
+    private Element modsElement;
+
+    @BeforeClass
+    public static void setUpClass() {
+        resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Path rulesetPath = Paths.get(resourcesFolder, "ruleset.xml");
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(rulesetPath.toString());
+        rulesetMapping = new RulesetMapping(prefs, rulesetPath);
+        digitalDocument = new DigitalDocument();
+        modsElement = new SAXBuilder().build(new StringReader(MODS)).getRootElement();
+    }
+
+    @Test
+    public void testDefaultMapping() throws Exception {
+        DocStruct monograph = digitalDocument.createDocStruct(rulesetMapping.getDocStructType("Monograph"));
+        rulesetMapping.getModsMapping(ModsMapping.DEFAULT_RULES).apply(modsElement, monograph);
+
+        assertEquals("Main title", getValue(monograph, "TitleDocMain"));
+        assertEquals("Other title", getValue(monograph, "OtherTitle"));
+        // only the first element is used
+        assertEquals("1900", getValue(monograph, "PublicationYear"));
+        assertEquals("2023", getValue(monograph, "_dateDigitization"));
+        assertEquals("Library", getValue(monograph, "PhysicalLocation"));
+        assertEquals("A 1", getValue(monograph, "shelfmarksource"));
+        assertTrue(monograph.getAllMetadataByType(rulesetMapping.getMetadataType("CatalogIDSource")).isEmpty());
+
+        List<Person> persons = monograph.getAllPersons();
+        assertEquals(2, persons.size());
+        assertEquals("Author", persons.get(0).getType().getName());
+        assertEquals("Mustermann", persons.get(0).getLastname());
+        assertEquals("Max", persons.get(0).getFirstname());
+        assertEquals("OtherPerson", persons.get(1).getType().getName());
+        assertEquals("Musterfrau", persons.get(1).getLastname());
+    }
+
+    @Test
+    public void testConfiguredRules() throws Exception {
+        List<ModsMapping.Rule> rules = List.of(ModsMapping.Rule.metadata("identifier[@type='vd17']", "CatalogIDSource"),
+                ModsMapping.Rule.metadata("location/physicalLocation", "PhysicalLocation"),
+                ModsMapping.Rule.metadata("titleInfo[@type!='alternative'", "TitleDocMain"),
+                ModsMapping.Rule.person("name[@type='personal']", "OtherPerson", "aut", Map.of("prt", "Author")));
+        DocStruct monograph = digitalDocument.createDocStruct(rulesetMapping.getDocStructType("Monograph"));
+        rulesetMapping.getModsMapping(rules).apply(modsElement, monograph);
+
+        assertEquals("1:234", getValue(monograph, "CatalogIDSource"));
+        assertEquals(2, monograph.getAllMetadataByType(rulesetMapping.getMetadataType("PhysicalLocation")).size());
+        // the invalid path is ignored
+        assertTrue(monograph.getAllMetadataByType(rulesetMapping.getMetadataType("TitleDocMain")).isEmpty());
+        assertEquals("OtherPerson", monograph.getAllPersons().get(0).getType().getName());
+        assertEquals("Author", monograph.getAllPersons().get(1).getType().getName());
+    }
+
+    @Test
+    public void testMappingIsCompiledOnce() {
+        assertSame(rulesetMapping.getModsMapping(ModsMapping.DEFAULT_RULES), rulesetMapping.getModsMapping(ModsMapping.DEFAULT_RULES));
+    }
+
+    private String getValue(DocStruct docstruct, String type) {
+        List<? extends Metadata> values = docstruct.getAllMetadataByType(rulesetMapping.getMetadataType(type));
+        assertEquals(type, 1, values.size());
+        return values.get(0).getValue();
+    }
+}
@@ -0,0 +1,68 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.stream.Stream;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RecordBaselineTest {
+
+    private static String resourcesFolder;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUpClass() {
+        resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+    }
+
+    @Test
+    public void testFailedMigrationKeepsBaseline() throws Exception {
+        Path importFolder = folder.getRoot().toPath().resolve("import");
+
+        // first migration succeeds
+        RecordBaseline first = new RecordBaseline(importFolder);
+        assertNull(first.readPrevious("1"));
+        download(first, "sample.xml");
+        first.commit();
+
+        // the record changed, but the second migration fails after the download
+        RecordBaseline failed = new RecordBaseline(importFolder);
+        MetsRecord changed = download(failed, "record.xml");
+        failed.discard();
+
+        // the next run still compares with the first migration, so the metadata is converted again instead of keeping the old process
+        RecordBaseline retry = new RecordBaseline(importFolder);
+        MetsRecord previous = retry.readPrevious("1");
+        assertTrue(MetsRecordDiff.compare(previous, changed).isMetadataChanged());
+        download(retry, "record.xml");
+        retry.commit();
+
+        // after a successful migration, the record is unchanged
+        assertFalse(MetsRecordDiff.compare(new RecordBaseline(importFolder).readPrevious("1"), changed).isMetadataChanged());
+        try (Stream<Path> files = Files.list(importFolder)) {
+            assertTrue(files.noneMatch(f -> f.getFileName().toString().endsWith(".tmp")));
+        }
+    }
+
+    private MetsRecord download(RecordBaseline baseline, String fixture) throws Exception {
+        Path downloadFile = baseline.getDownloadFile("1");
+        Files.copy(Paths.get(resourcesFolder, fixture), downloadFile, StandardCopyOption.REPLACE_EXISTING);
+        return MetsRecordReader.read(downloadFile);
+    }
+}
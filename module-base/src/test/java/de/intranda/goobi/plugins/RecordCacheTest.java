@@ -0,0 +1,173 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class RecordCacheTest {
+
+    private static String resourcesFolder;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private byte[] content;
+    private AtomicInteger fullResponses = new AtomicInteger();
+    private AtomicInteger notModifiedResponses = new AtomicInteger();
+
+    @BeforeClass
+    public static void setUpClass() {
+        resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        content = Files.readAllBytes(Paths.get(resourcesFolder, "sample_anchor.xml"));
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/oai", exchange -> {
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModifiedResponses.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                fullResponses.incrementAndGet();
+                exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(200, content.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(content);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testRevalidation() throws Exception {
+        String url = "http://localhost:" + server.getAddress().getPort() + "/oai?id=1";
+        RecordCache cache = new RecordCache(folder.newFolder("cache").toPath(), 10, 0, 30);
+        Path target = folder.getRoot().toPath().resolve("import").resolve("oai_mets_1.xml");
+
+        MetsRecord first = cache.getRecord(url, target, false);
+        MetsRecord second = cache.getRecord(url, target, false);
+
+        assertEquals(1, fullResponses.get());
+        assertEquals(1, notModifiedResponses.get());
+        assertTrue(Files.size(target) > 0);
+        assertEquals(first.getDmdSecs().keySet(), second.getDmdSecs().keySet());
+    }
+
+    @Test
+    public void testAnchorInMemory() throws Exception {
+        String url = "http://localhost:" + server.getAddress().getPort() + "/oai?id=2";
+        RecordCache cache = new RecordCache(folder.newFolder("cache").toPath(), 10, 600, 30);
+        Path target = folder.getRoot().toPath().resolve("oai_mets_2.xml");
+
+        MetsRecord first = cache.getRecord(url, target, true);
+        MetsRecord second = cache.getRecord(url, target, true);
+
+        assertSame(first, second);
+        assertEquals(1, fullResponses.get());
+        assertEquals(0, notModifiedResponses.get());
+    }
+
+    @Test
+    public void testMissingCacheFileIsRequestedAgain() throws Exception {
+        Path cacheFolder = folder.newFolder("cache").toPath();
+        // the cached record is deleted by another process while the server answers that it was not modified
+        server.createContext("/deleted", exchange -> {
+            if (exchange.getRequestHeaders().containsKey("If-None-Match")) {
+                try (Stream<Path> files = Files.list(cacheFolder)) {
+                    for (Path file : files.filter(f -> f.toString().endsWith(".xml")).collect(Collectors.toList())) {
+                        Files.delete(file);
+                    }
+                }
+                notModifiedResponses.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                fullResponses.incrementAndGet();
+                exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(200, content.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(content);
+                }
+            }
+            exchange.close();
+        });
+        String url = "http://localhost:" + server.getAddress().getPort() + "/deleted?id=3";
+        RecordCache cache = new RecordCache(cacheFolder, 10, 0, 30);
+        Path target = folder.getRoot().toPath().resolve("oai_mets_3.xml");
+
+        MetsRecord first = cache.getRecord(url, target, false);
+        MetsRecord second = cache.getRecord(url, target, false);
+
+        assertEquals(2, fullResponses.get());
+        assertEquals(1, notModifiedResponses.get());
+        assertEquals(content.length, Files.size(target));
+        assertEquals(first.getDmdSecs(), second.getDmdSecs());
+    }
+
+    @Test
+    public void testAnchorLimitsAreSeparate() throws Exception {
+        String url = "http://localhost:" + server.getAddress().getPort() + "/oai?id=";
+        Path cacheFolder = folder.newFolder("cache").toPath();
+        Path target = folder.getRoot().toPath().resolve("oai_mets.xml");
+        RecordCache large = new RecordCache(cacheFolder, 10, 600, 30);
+        RecordCache small = new RecordCache(cacheFolder, 1, 600, 30);
+
+        MetsRecord first = large.getRecord(url + "4", target, true);
+        large.getRecord(url + "5", target, true);
+        small.getRecord(url + "6", target, true);
+        small.getRecord(url + "7", target, true);
+
+        // the smaller limit of the second configuration does not evict the records of the first one
+        assertSame(first, large.getRecord(url + "4", target, true));
+        assertEquals(4, fullResponses.get());
+    }
+
+    @Test
+    public void testCleanup() throws Exception {
+        Path cacheFolder = folder.newFolder("cache").toPath();
+        Path oldRecord = Files.writeString(cacheFolder.resolve("old.xml"), "<mets/>");
+        Path oldValidators = Files.writeString(cacheFolder.resolve("old.properties"), "etag=1");
+        Path newRecord = Files.writeString(cacheFolder.resolve("new.xml"), "<mets/>");
+        FileTime lastMonth = FileTime.fromMillis(System.currentTimeMillis() - 31 * 24 * 60 * 60 * 1000l);
+        Files.setLastModifiedTime(oldRecord, lastMonth);
+        Files.setLastModifiedTime(oldValidators, lastMonth);
+
+        new RecordCache(cacheFolder, 10, 600, 30);
+
+        assertFalse(Files.exists(oldRecord));
+        assertFalse(Files.exists(oldValidators));
+        assertTrue(Files.exists(newRecord));
+    }
+}
@@ -0,0 +1,69 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import de.intranda.goobi.plugins.HttpTransfer.HostUnavailableException;
+import de.intranda.goobi.plugins.HttpTransfer.RetryableStatusException;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testExponentialDelay() {
+        RetryPolicy policy = new RetryPolicy(10, Duration.ofMillis(100), Duration.ofMillis(1000));
+        IOException error = new IOException("connection reset");
+        for (int i = 0; i < 20; i++) {
+            long first = policy.getDelay(0, error).toMillis();
+            assertTrue(first >= 50 && first <= 100);
+            long third = policy.getDelay(2, error).toMillis();
+            assertTrue(third >= 200 && third <= 400);
+            long capped = policy.getDelay(8, error).toMillis();
+            assertTrue(capped >= 500 && capped <= 1000);
+        }
+    }
+
+    @Test
+    public void testRetryAfter() {
+        RetryPolicy policy = new RetryPolicy(3, Duration.ofMillis(100), Duration.ofSeconds(30));
+        assertEquals(20000, policy.getDelay(0, new RetryableStatusException("429", Duration.ofSeconds(20))).toMillis());
+        // limited by the maximum delay
+        assertEquals(30000, policy.getDelay(0, new RetryableStatusException("503", Duration.ofMinutes(10))).toMillis());
+
+        assertEquals(Duration.ofSeconds(120), HttpTransfer.parseRetryAfter("120"));
+        assertEquals(Duration.ZERO, HttpTransfer.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+        assertEquals(null, HttpTransfer.parseRetryAfter("soon"));
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        RetryPolicy policy = new RetryPolicy(2, Duration.ofMillis(1), Duration.ofMillis(2));
+        AtomicInteger attempts = new AtomicInteger();
+        String result = policy.execute("test", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IOException("failed");
+            }
+            return "ok";
+        });
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+
+        attempts.set(0);
+        try {
+            policy.execute("test", () -> {
+                attempts.incrementAndGet();
+                throw new HostUnavailableException("down");
+            });
+            fail();
+        } catch (HostUnavailableException e) {
+            // not retried
+            assertEquals(1, attempts.get());
+        }
+    }
+}
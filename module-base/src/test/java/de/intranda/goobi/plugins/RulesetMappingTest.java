@@ -0,0 +1,63 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ugh.dl.Prefs;
+
+public class RulesetMappingTest {
+
+    private static String resourcesFolder;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUpClass() {
+        resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+    }
+
+    @Test
+    public void testCacheIsInvalidatedByModification() throws Exception {
+        Path rulesetPath = folder.getRoot().toPath().resolve("ruleset.xml");
+        Files.copy(Paths.get(resourcesFolder, "ruleset.xml"), rulesetPath, StandardCopyOption.REPLACE_EXISTING);
+        AtomicInteger loads = new AtomicInteger();
+
+        RulesetMapping first = RulesetMapping.load(rulesetPath, () -> {
+            loads.incrementAndGet();
+            return new Prefs();
+        });
+        RulesetMapping second = RulesetMapping.load(rulesetPath, () -> {
+            loads.incrementAndGet();
+            return new Prefs();
+        });
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals("Monograph", first.getDocStructRulesetNames().get("monograph"));
+
+        Files.setLastModifiedTime(rulesetPath, FileTime.fromMillis(Files.getLastModifiedTime(rulesetPath).toMillis() + 10000));
+        RulesetMapping third = RulesetMapping.load(rulesetPath, () -> {
+            loads.incrementAndGet();
+            return new Prefs();
+        });
+        assertNotSame(first, third);
+        assertEquals(2, loads.get());
+    }
+}
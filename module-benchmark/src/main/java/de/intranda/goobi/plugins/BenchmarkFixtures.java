@@ -0,0 +1,193 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import de.intranda.goobi.plugins.MetsRecord.LogicalDiv;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Prefs;
+import ugh.exceptions.PreferencesException;
+import ugh.exceptions.UGHException;
+
+/**
+ * Fixtures for the benchmarks. The METS files of the unit tests are copied from the classpath into a temporary folder, scaled records are
+ * generated with a configurable number of pages.
+ */
+public class BenchmarkFixtures {
+
+    /** prefix of the fixture names of generated records, followed by the number of pages */
+    public static final String SYNTHETIC = "synthetic-";
+
+    // pages per generated chapter
+    private static final int PAGES_PER_CHAPTER = 20;
+
+    private final Path folder;
+    private final Prefs prefs;
+
+    public BenchmarkFixtures() throws IOException, PreferencesException {
+        folder = Files.createTempDirectory("vl-benchmark");
+        prefs = new Prefs();
+        prefs.loadPrefs(copyResource("ruleset.xml").toString());
+    }
+
+    /**
+     * get the METS file of a fixture
+     *
+     * @param name the name of a test file like sample.xml or synthetic-1000 for a generated record with 1000 pages
+     * @return the METS file
+     * @throws IOException
+     */
+    public Path getMetsFile(String name) throws IOException {
+        if (name.startsWith(SYNTHETIC)) {
+            return generate(Integer.parseInt(name.substring(SYNTHETIC.length())));
+        }
+        return copyResource(name);
+    }
+
+    /**
+     * create a plugin instance that can convert records without a process
+     *
+     * @return the plugin
+     */
+    public MigrateVisualLibraryToGoobiStepPlugin createPlugin() throws IOException {
+        MigrateVisualLibraryToGoobiStepPlugin plugin = new MigrateVisualLibraryToGoobiStepPlugin();
+        plugin.initializeTypes(new RulesetMapping(prefs, copyResource("ruleset.xml")));
+        return plugin;
+    }
+
+    /**
+     * create an empty document for a record, with an anchor if the record is a volume of a multi volume work or periodical
+     *
+     * @param rec the record
+     * @return the document
+     * @throws UGHException
+     */
+    public DigitalDocument createDocument(MetsRecord rec) throws UGHException {
+        DigitalDocument digitalDocument = new DigitalDocument();
+        LogicalDiv root = rec.getLogicalRoot();
+        DocStruct logical;
+        if (root != null && root.isMptr()) {
+            logical = digitalDocument.createDocStruct(prefs.getDocStrctTypeByName("MultiVolumeWork"));
+            logical.addChild(digitalDocument.createDocStruct(prefs.getDocStrctTypeByName("Volume")));
+        } else {
+            logical = digitalDocument.createDocStruct(prefs.getDocStrctTypeByName("Monograph"));
+        }
+        digitalDocument.setLogicalDocStruct(logical);
+        digitalDocument.setPhysicalDocStruct(digitalDocument.createDocStruct(prefs.getDocStrctTypeByName("BoundBook")));
+        return digitalDocument;
+    }
+
+    private Path copyResource(String name) throws IOException {
+        Path target = folder.resolve(name);
+        if (!Files.exists(target)) {
+            try (InputStream in = BenchmarkFixtures.class.getResourceAsStream("/fixtures/" + name)) {
+                if (in == null) {
+                    throw new IOException("Fixture " + name + " not found");
+                }
+                Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        return target;
+    }
+
+    /**
+     * generate a METS file in the structure of the visual library with images, ALTO files, chapters and a complete structLink
+     */
+    private Path generate(int pages) throws IOException {
+        Path target = folder.resolve(SYNTHETIC + pages + ".xml");
+        if (Files.exists(target)) {
+            return target;
+        }
+        int chapters = Math.max(1, pages / PAGES_PER_CHAPTER);
+        try (BufferedWriter out = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            out.write("<mets:mets xmlns:mets=\"http://www.loc.gov/METS/\" xmlns:mods=\"http://www.loc.gov/mods/v3\""
+                    + " xmlns:xlink=\"http://www.w3.org/1999/xlink\">\n");
+            out.write("<mets:dmdSec ID=\"md1\"><mets:mdWrap MDTYPE=\"MODS\"><mets:xmlData><mods:mods>"
+                    + "<mods:titleInfo><mods:title>Synthetic record</mods:title><mods:subTitle>with " + pages + " pages</mods:subTitle>"
+                    + "</mods:titleInfo>"
+                    + "<mods:name type=\"personal\"><mods:displayForm>Mustermann, Max</mods:displayForm>"
+                    + "<mods:role><mods:roleTerm type=\"code\" authority=\"marcrelator\">aut</mods:roleTerm></mods:role></mods:name>"
+                    + "<mods:originInfo><mods:place><mods:placeTerm type=\"text\">Göttingen</mods:placeTerm></mods:place>"
+                    + "<mods:publisher>intranda</mods:publisher><mods:dateIssued keyDate=\"yes\">1900</mods:dateIssued></mods:originInfo>"
+                    + "<mods:language><mods:languageTerm type=\"code\" authority=\"iso639-2b\">ger</mods:languageTerm></mods:language>"
+                    + "<mods:physicalDescription><mods:extent>" + pages + " S.</mods:extent></mods:physicalDescription>"
+                    + "<mods:recordInfo><mods:recordIdentifier source=\"local\">1</mods:recordIdentifier></mods:recordInfo>"
+                    + "</mods:mods></mets:xmlData></mets:mdWrap></mets:dmdSec>\n");
+            for (int chapter = 2; chapter <= chapters; chapter += 2) {
+                out.write("<mets:dmdSec ID=\"md_chapter" + chapter + "\"><mets:mdWrap MDTYPE=\"MODS\"><mets:xmlData><mods:mods>"
+                        + "<mods:titleInfo><mods:title>Chapter " + chapter + "</mods:title></mods:titleInfo>"
+                        + "</mods:mods></mets:xmlData></mets:mdWrap></mets:dmdSec>\n");
+            }
+
+            out.write("<mets:fileSec>\n");
+            for (String use : new String[] { "MAX", "FULLTEXT" }) {
+                out.write("<mets:fileGrp USE=\"" + use + "\">\n");
+                for (int page = 1; page <= pages; page++) {
+                    String mimeType = "MAX".equals(use) ? "image/jpeg" : "text/xml";
+                    out.write("<mets:file ID=\"" + fileId(use, page) + "\" MIMETYPE=\"" + mimeType + "\"><mets:FLocat LOCTYPE=\"URL\""
+                            + " xlink:href=\"https://example.com/download/" + use.toLowerCase() + "/" + page + "\"/></mets:file>\n");
+                }
+                out.write("</mets:fileGrp>\n");
+            }
+            out.write("</mets:fileSec>\n");
+
+            out.write("<mets:structMap TYPE=\"PHYSICAL\"><mets:div ID=\"phys1\" TYPE=\"physSequence\">\n");
+            for (int page = 1; page <= pages; page++) {
+                out.write("<mets:div ID=\"phys" + (page + 1) + "\" TYPE=\"page\" ORDER=\"" + page + "\" ORDERLABEL=\"[" + page + "]\""
+                        + " CONTENTIDS=\"urn:nbn:de:0000-" + page + "\"><mets:fptr FILEID=\"" + fileId("MAX", page) + "\"/>"
+                        + "<mets:fptr FILEID=\"" + fileId("FULLTEXT", page) + "\"/></mets:div>\n");
+            }
+            out.write("</mets:div></mets:structMap>\n");
+
+            out.write("<mets:structMap TYPE=\"LOGICAL\"><mets:div ID=\"log1\" DMDID=\"md1\" TYPE=\"monograph\">\n");
+            for (int chapter = 1; chapter <= chapters; chapter++) {
+                if (chapter % 2 == 0) {
+                    out.write("<mets:div ID=\"log_chapter" + chapter + "\" DMDID=\"md_chapter" + chapter + "\" TYPE=\"chapter\"/>\n");
+                } else {
+                    out.write("<mets:div ID=\"log_chapter" + chapter + "\" TYPE=\"chapter\" LABEL=\"Chapter " + chapter + "\"/>\n");
+                }
+            }
+            out.write("</mets:div></mets:structMap>\n");
+
+            out.write("<mets:structLink>\n");
+            for (int page = 1; page <= pages; page++) {
+                int chapter = Math.min(chapters, (page - 1) / PAGES_PER_CHAPTER + 1);
+                out.write("<mets:smLink xlink:from=\"log1\" xlink:to=\"phys" + (page + 1) + "\"/>\n");
+                out.write("<mets:smLink xlink:from=\"log_chapter" + chapter + "\" xlink:to=\"phys" + (page + 1) + "\"/>\n");
+            }
+            out.write("</mets:structLink>\n");
+            out.write("</mets:mets>\n");
+        }
+        return target;
+    }
+
+    private static String fileId(String use, int page) {
+        return "IMG_" + use + "_" + page;
+    }
+}
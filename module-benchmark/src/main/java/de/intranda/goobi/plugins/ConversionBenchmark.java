@@ -0,0 +1,148 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.jdom2.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.intranda.goobi.plugins.MetsRecord.LogicalDiv;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.exceptions.PreferencesException;
+import ugh.exceptions.UGHException;
+
+/**
+ * Benchmarks for the conversion of a METS record into the internal UGH document. Each fixture is read once per trial, the benchmarks then
+ * measure the single conversion steps.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversionBenchmark {
+
+    private static final String IMAGE_FOLDER = "/opt/digiverso/goobi/metadata/1/images/benchmark_media/";
+
+    @Param({ "sample.xml", "record.xml", "sample_monograph.xml", "sample_anchor.xml", "synthetic-1000", "synthetic-10000", "synthetic-50000" })
+    public String fixture;
+
+    private BenchmarkFixtures fixtures;
+    private Path metsFile;
+    private MetsRecord rec;
+    private MigrateVisualLibraryToGoobiStepPlugin plugin;
+    private LogicalDiv mainDiv;
+    private Element mainMods;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, PreferencesException, UGHException {
+        fixtures = new BenchmarkFixtures();
+        metsFile = fixtures.getMetsFile(fixture);
+        rec = MetsRecordReader.read(metsFile);
+        plugin = fixtures.createPlugin();
+        // sets the current record of the plugin, needed by createDocstruct
+        plugin.importRecord(fixtures.createDocument(rec), rec, IMAGE_FOLDER);
+
+        mainDiv = rec.getLogicalRoot();
+        if (mainDiv.isMptr() && !mainDiv.getChildren().isEmpty()) {
+            mainDiv = mainDiv.getChildren().get(0);
+        }
+        mainMods = rec.getModsElement(mainDiv.getDmdId());
+    }
+
+    /**
+     * a document with imported pages and links, created before each call of the page assignment
+     */
+    @State(Scope.Thread)
+    public static class ImportedDocument {
+        DigitalDocument digitalDocument;
+        DocStruct logical;
+
+        @Setup(Level.Invocation)
+        public void setup(ConversionBenchmark benchmark) throws UGHException {
+            digitalDocument = benchmark.fixtures.createDocument(benchmark.rec);
+            benchmark.plugin.importRecord(digitalDocument, benchmark.rec, IMAGE_FOLDER);
+            logical = digitalDocument.getLogicalDocStruct();
+            if (logical.getType().isAnchor()) {
+                logical = logical.getAllChildren().get(0);
+            }
+        }
+    }
+
+    @Benchmark
+    public MetsRecord readRecord() throws IOException {
+        return MetsRecordReader.read(metsFile);
+    }
+
+    @Benchmark
+    public DigitalDocument importRecord() throws UGHException {
+        DigitalDocument digitalDocument = fixtures.createDocument(rec);
+        plugin.importRecord(digitalDocument, rec, IMAGE_FOLDER);
+        return digitalDocument;
+    }
+
+    @Benchmark
+    public DocStruct parseModsElement() throws UGHException {
+        DocStruct docstruct = fixtures.createDocument(rec).getLogicalDocStruct();
+        if (mainMods != null) {
+            plugin.parseModsElement(mainMods, docstruct);
+        }
+        return docstruct;
+    }
+
+    @Benchmark
+    public DocStruct createDocstruct() throws UGHException {
+        DigitalDocument digitalDocument = fixtures.createDocument(rec);
+        DocStruct logical = digitalDocument.getLogicalDocStruct();
+        for (LogicalDiv div : mainDiv.getChildren()) {
+            plugin.createDocstruct(div, logical, digitalDocument);
+        }
+        return logical;
+    }
+
+    @Benchmark
+    public DocStruct assignPagesToUpperElement(ImportedDocument imported) {
+        plugin.assignPagesToUpperElement(imported.logical, imported.digitalDocument.getPhysicalDocStruct().getAllChildren());
+        return imported.logical;
+    }
+
+    @Benchmark
+    public DigitalDocument clearStructure(ImportedDocument imported) {
+        plugin.clearStructure(imported.digitalDocument, imported.logical);
+        return imported.digitalDocument;
+    }
+}